@@ -0,0 +1,128 @@
+package io.github.chrisruffalo.qgwt.benchmarks;
+
+import io.github.chrisruffalo.qgwt.Extractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Measures copying the sources of a synthetic jar to a directory with
+ * {@link Extractor#processStreamToDirectory}, the way module sources are extracted when they are not in the
+ * extraction cache. The jar has a class file next to every source file, as a library jar would, which are walked
+ * but not copied. 'freshTarget' extracts into an empty directory, otherwise files are copied over the last run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    private static final String ROOT = "com/example/client";
+
+    @Param({"100", "1000"})
+    int files;
+
+    @Param({"4096"})
+    int fileSize;
+
+    @Param({"false", "true"})
+    boolean freshTarget;
+
+    private Path workDir;
+
+    private FileSystem jarFileSystem;
+
+    private Path target;
+
+    private final StreamExtractor extractor = new StreamExtractor();
+
+    /**
+     * Opens up the extraction that the code server does on its own.
+     */
+    static final class StreamExtractor extends Extractor {
+
+        void extract(final String inputArchive, final Stream<Path> stream, final Path targetRoot) {
+            processStreamToDirectory(inputArchive, stream, targetRoot);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.workDir = Files.createTempDirectory("qgwt-extraction-benchmark");
+        final Path jar = this.workDir.resolve("synthetic.jar");
+        final byte[] body = new byte[this.fileSize];
+        Arrays.fill(body, (byte) 'a');
+        try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < this.files; i++) {
+                // ten files to a package, like a real source tree
+                final String name = String.format("%s/p%d/Type%d", ROOT, i / 10, i);
+                write(out, name + ".java", body);
+                write(out, name + ".class", body);
+            }
+        }
+        this.jarFileSystem = FileSystems.newFileSystem(URI.create("jar:" + jar.toUri()), Collections.emptyMap());
+        this.target = this.workDir.resolve("target");
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTarget() throws IOException {
+        if (this.freshTarget) {
+            delete(this.target);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        this.jarFileSystem.close();
+        delete(this.workDir);
+    }
+
+    @Benchmark
+    public Path processStreamToDirectory() throws IOException {
+        try (final Stream<Path> stream = Files.walk(this.jarFileSystem.getPath(ROOT))) {
+            this.extractor.extract("synthetic.jar", stream, this.target);
+        }
+        return this.target;
+    }
+
+    private static void write(final JarOutputStream out, final String name, final byte[] body) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        out.write(body);
+        out.closeEntry();
+    }
+
+    private static void delete(final Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (final Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.chrisruffalo.qgwt.benchmarks;
+
+import io.github.chrisruffalo.qgwt.ModuleGraphResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures resolving a generated module graph with {@link ModuleGraphResolver}. Every level of the graph has
+ * 'width' modules that each inherit two modules of the next level, 'depth' levels down to a module they all share,
+ * so that the graph is deep and full of modules that are reached more than once.
+ *
+ * 'parse' reads the descriptors from memory, where they have no modification time and are parsed every time, as on
+ * the first start. 'reload' reads them from files, where they are only parsed once and a resolve only checks that
+ * they have not changed, as on a live reload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModuleGraphBenchmark {
+
+    private static final String ROOT = "bench.l0.Module0";
+
+    private static final int WIDTH = 4;
+
+    @Param({"8", "64"})
+    int depth;
+
+    private Path workDir;
+
+    private ClassLoader memoryClassLoader;
+
+    private URLClassLoader fileClassLoader;
+
+    private final List<String> roots = Collections.singletonList(ROOT);
+
+    /**
+     * Serves module descriptors from memory under the 'mem' scheme. The scheme is registered for the whole jvm since
+     * the parser opens urls from their text and would lose a handler that was only given to the url.
+     */
+    static final class MemoryClassLoader extends ClassLoader {
+
+        private static final Map<String, byte[]> RESOURCES = new ConcurrentHashMap<>();
+
+        private static final URLStreamHandler HANDLER = new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(final URL url) {
+                return new URLConnection(url) {
+                    @Override
+                    public void connect() {
+
+                    }
+
+                    @Override
+                    public InputStream getInputStream() throws IOException {
+                        final byte[] resource = RESOURCES.get(url.getPath().substring(1));
+                        if (resource == null) {
+                            throw new IOException("No resource " + url);
+                        }
+                        return new ByteArrayInputStream(resource);
+                    }
+                };
+            }
+        };
+
+        static {
+            URL.setURLStreamHandlerFactory(protocol -> "mem".equals(protocol) ? HANDLER : null);
+        }
+
+        MemoryClassLoader(final Map<String, byte[]> resources) {
+            super(null);
+            RESOURCES.clear();
+            RESOURCES.putAll(resources);
+        }
+
+        @Override
+        protected URL findResource(final String name) {
+            if (!RESOURCES.containsKey(name)) {
+                return null;
+            }
+            try {
+                return new URL("mem", "", -1, "/" + name);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final Map<String, byte[]> descriptors = new HashMap<>();
+        for (int level = 0; level < this.depth; level++) {
+            for (int index = 0; index < WIDTH; index++) {
+                final String[] inherits = level + 1 < this.depth
+                    ? new String[]{module(level + 1, index), module(level + 1, (index + 1) % WIDTH)}
+                    : new String[]{"bench.Common"};
+                descriptors.put(ModuleGraphResolver.moduleXmlLocation(module(level, index)), descriptor(level, index, inherits));
+            }
+        }
+        descriptors.put(ModuleGraphResolver.moduleXmlLocation("bench.Common"), descriptor(this.depth, 0, new String[0]));
+        this.memoryClassLoader = new MemoryClassLoader(descriptors);
+
+        this.workDir = Files.createTempDirectory("qgwt-module-graph-benchmark");
+        for (final Map.Entry<String, byte[]> descriptor : descriptors.entrySet()) {
+            final Path file = this.workDir.resolve(descriptor.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, descriptor.getValue());
+        }
+        this.fileClassLoader = new URLClassLoader(new URL[]{this.workDir.toUri().toURL()}, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        this.fileClassLoader.close();
+        try (final Stream<Path> stream = Files.walk(this.workDir)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int parse() {
+        return new ModuleGraphResolver(this.memoryClassLoader).resolveAll(this.roots).size();
+    }
+
+    @Benchmark
+    public int reload() {
+        return new ModuleGraphResolver(this.fileClassLoader).resolveAll(this.roots).size();
+    }
+
+    private static String module(final int level, final int index) {
+        return String.format("bench.l%d.Module%d", level, index);
+    }
+
+    /**
+     * A descriptor like most library modules have, including elements the resolver does not read. There is no
+     * doctype so that nothing is fetched while parsing.
+     */
+    private static byte[] descriptor(final int level, final int index, final String[] inherits) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<module>\n");
+        for (final String inherit : inherits) {
+            xml.append("  <inherits name=\"").append(inherit).append("\"/>\n");
+        }
+        xml.append("  <source path=\"client\"/>\n");
+        xml.append("  <source path=\"shared\"/>\n");
+        xml.append("  <super-source path=\"jre\"/>\n");
+        xml.append("  <public path=\"public\"/>\n");
+        xml.append("  <stylesheet src=\"module.css\"/>\n");
+        xml.append("  <define-property name=\"l").append(level).append("m").append(index).append("\" values=\"on,off\"/>\n");
+        xml.append("  <set-property name=\"l").append(level).append("m").append(index).append("\" value=\"on\"/>\n");
+        xml.append("  <replace-with class=\"bench.client.Impl").append(index).append("\">\n");
+        xml.append("    <when-type-is class=\"bench.client.Api\"/>\n");
+        xml.append("  </replace-with>\n");
+        xml.append("</module>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
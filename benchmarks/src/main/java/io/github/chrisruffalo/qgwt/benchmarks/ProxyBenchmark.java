@@ -0,0 +1,94 @@
+package io.github.chrisruffalo.qgwt.benchmarks;
+
+import io.github.chrisruffalo.qgwt.runtime.CodeServerProxy;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures proxied GETs through {@link CodeServerProxy} against a stub code server. The
+ * 'clientPerRequest' benchmark reproduces the old behavior of building a new client (and connection)
+ * for every request so that the two can be compared. Run with '-bm thrpt' for requests/sec and
+ * '-bm sample' for latency percentiles (p0.99).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class ProxyBenchmark {
+
+    private static final String PATH = StubCodeServer.MODULE_PATH + "0123456789ABCDEF.cache.js";
+
+    @Param({"4096", "262144"})
+    int bodySize;
+
+    @Param({"false", "true"})
+    boolean chunked;
+
+    private StubCodeServer stub;
+
+    private CodeServerProxy proxy;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ServletException {
+        this.stub = new StubCodeServer(this.bodySize, this.chunked);
+
+        final Map<String, String> params = new HashMap<>();
+        params.put(CodeServerProxy.BIND_ADDRESS_PARAM, "127.0.0.1");
+        params.put(CodeServerProxy.BIND_PORT_PARAM, String.valueOf(this.stub.getPort()));
+        params.put(CodeServerProxy.PREFIXES_PARAM, StubCodeServer.MODULE_PATH + ",/recompile/");
+        params.put(CodeServerProxy.MAX_CONNECTIONS_PER_ROUTE_PARAM, "64");
+        params.put(CodeServerProxy.MAX_CONNECTIONS_PARAM, "64");
+        this.proxy = new CodeServerProxy();
+        this.proxy.init(Servlets.filterConfig(params));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        this.proxy.destroy();
+        this.stub.close();
+    }
+
+    @Benchmark
+    public long pooledFilter() throws IOException, ServletException {
+        final Servlets.CountingOutputStream out = new Servlets.CountingOutputStream();
+        this.proxy.doFilter(Servlets.get(PATH), Servlets.response(out), Servlets.chain());
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long clientPerRequest() throws IOException {
+        final Servlets.CountingOutputStream out = new Servlets.CountingOutputStream();
+        try (final CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            final HttpGet get = new HttpGet(String.format("http://127.0.0.1:%d%s", this.stub.getPort(), PATH));
+            try (final CloseableHttpResponse response = httpClient.execute(get)) {
+                response.getEntity().writeTo(out);
+            }
+        }
+        return out.getCount();
+    }
+}
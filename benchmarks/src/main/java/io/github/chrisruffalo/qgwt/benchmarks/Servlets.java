@@ -0,0 +1,98 @@
+package io.github.chrisruffalo.qgwt.benchmarks;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Just enough of the servlet API to drive a filter outside of a container.
+ */
+public final class Servlets {
+
+    private Servlets() {
+
+    }
+
+    public static FilterConfig filterConfig(final Map<String, String> params) {
+        return (FilterConfig) Proxy.newProxyInstance(Servlets.class.getClassLoader(), new Class<?>[]{FilterConfig.class}, (proxy, method, args) -> {
+            if ("getInitParameter".equals(method.getName())) {
+                return params.get((String) args[0]);
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    public static HttpServletRequest get(final String uri) {
+        return (HttpServletRequest) Proxy.newProxyInstance(Servlets.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMethod":
+                    return "GET";
+                case "getRequestURI":
+                    return uri;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    public static HttpServletResponse response(final ServletOutputStream outputStream) {
+        return (HttpServletResponse) Proxy.newProxyInstance(Servlets.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+            if ("getOutputStream".equals(method.getName())) {
+                return outputStream;
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    public static FilterChain chain() {
+        return (request, response) -> {};
+    }
+
+    private static Object defaultValue(final Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * Counts what is written and throws it away.
+     */
+    public static class CountingOutputStream extends ServletOutputStream {
+
+        private long count;
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+
+        }
+
+        @Override
+        public void write(int b) {
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.chrisruffalo.qgwt.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal stand-in for the GWT code server that answers every request under the
+ * module path with a fixed body and everything else with a 404. When chunked the body is
+ * sent without a content length.
+ */
+public class StubCodeServer implements AutoCloseable {
+
+    public static final String MODULE_PATH = "/ui/";
+
+    static {
+        // without this the jdk server writes headers and body in separate segments and keep-alive
+        // connections stall on delayed acks, which would measure the stub rather than the proxy
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    public StubCodeServer(final int bodySize, final boolean chunked) throws IOException {
+        final byte[] body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        this.server.createContext("/", exchange -> {
+            if (exchange.getRequestURI().getPath().startsWith(MODULE_PATH)) {
+                exchange.getResponseHeaders().add("Content-Type", "application/javascript");
+                exchange.sendResponseHeaders(200, chunked ? 0 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.server.setExecutor(this.executor);
+        this.server.start();
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
@@ -2,22 +2,43 @@ package com.google.gwt.dev.codeserver;
 
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.About;
 import com.google.gwt.dev.MinimalRebuildCacheManager;
+import com.google.gwt.dev.javac.CountingUnitCache;
 import com.google.gwt.dev.javac.UnitCache;
 import com.google.gwt.dev.javac.UnitCacheSingleton;
-import com.google.gwt.thirdparty.guava.common.base.Joiner;
 import com.google.gwt.thirdparty.guava.common.collect.ImmutableMap;
 import com.google.gwt.util.tools.Utility;
 import com.google.gwt.util.tools.shared.Md5Utils;
 import com.google.gwt.util.tools.shared.StringUtils;
+import io.github.chrisruffalo.qgwt.CacheBudget;
+import io.github.chrisruffalo.qgwt.configuration.CodeServerConfiguration;
 import io.github.chrisruffalo.qgwt.logger.QuarkusTreeLogger;
+import io.github.chrisruffalo.qgwt.runtime.CodeServerOutputs;
+import io.github.chrisruffalo.qgwt.runtime.CodeServerTimings;
+import io.github.chrisruffalo.qgwt.runtime.Gzip;
 import org.jboss.logging.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is a copy of the CodeServer class that allows injecting a custom (tree) logger as well
@@ -25,29 +46,120 @@ import java.util.List;
  */
 public class QuarkusCodeServer extends CodeServer {
 
+    /**
+     * Where the binding properties of the last served compile of each module are kept between starts.
+     */
+    private static final String BINDINGS_FILE = "last-bindings.properties";
+
     private final Path baseCachePath;
 
     private OutboxTable outboxTable;
 
-    private TreeLogger currentLogger;
+    private JobRunner runner;
 
-    public QuarkusCodeServer() {
-        this(Paths.get(System.getProperty("java.io.tmpdir")));
-    }
+    private JobEventTable eventTable;
+
+    private TreeLogger currentLogger;
 
-    public QuarkusCodeServer(final Path tmpDir) {
+    private CountingUnitCache unitCache;
+
+    private WebServer webServer;
+
+    /**
+     * The binding properties of the last compile that was served for each module (by input module name) so that a
+     * refresh can compile the same permutation again.
+     */
+    private final Map<String, Map<String, String>> lastBindings = new ConcurrentHashMap<>();
+
+    /**
+     * The last job submitted by a refresh for each module (by input module name).
+     */
+    private final Map<String, Job> refreshJobs = new ConcurrentHashMap<>();
+
+    private final long recompileDelayMillis;
+
+    private final boolean backgroundCompile;
+
+    /**
+     * The binding properties of a background compile for a module that has not been served yet.
+     */
+    private final Map<String, String> backgroundBindings = new HashMap<>();
+
+    private final long cacheMaxBytes;
+
+    /**
+     * The ids of the jobs started by the background compile that have not finished yet.
+     */
+    private final Set<String> backgroundJobs = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean backgroundFailed = false;
+
+    /**
+     * When each job that is compiling started to, by job id.
+     */
+    private final Map<String, Long> compileStarts = new ConcurrentHashMap<>();
+
+    /**
+     * Modules with changes that are waiting for the recompile delay to pass, guarded by this.
+     */
+    private final Set<String> pendingModules = new LinkedHashSet<>();
+
+    private ScheduledFuture<?> pendingRefresh;
+
+    /**
+     * Runs scheduled refreshes so that neither the build step nor the job runner waits on the recompile delay.
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "qgwt-recompile-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Compresses the output of each compile in the background so the job runner is not held up.
+     */
+    private final ExecutorService compressor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "qgwt-output-compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param tmpDir where caches and other state is kept
+     * @param config the code server settings, the recompile delay, background compile (and its bindings) and cache
+     *               size are read from it
+     */
+    public QuarkusCodeServer(final Path tmpDir, final CodeServerConfiguration config) {
         this.baseCachePath = tmpDir;
+        final Duration recompileDelay = config.getRecompileDelay();
+        this.recompileDelayMillis = recompileDelay != null ? Math.max(0, recompileDelay.toMillis()) : 0;
+        this.backgroundCompile = config.isBackgroundCompile();
+        this.backgroundBindings.put("user.agent", "safari");
+        this.backgroundBindings.put("locale", "en");
+        if (config.getBackgroundBindings() != null) {
+            this.backgroundBindings.putAll(config.getBackgroundBindings());
+        }
+        this.cacheMaxBytes = config.getCacheMaxSize() != null ? config.getCacheMaxSize().asLongValue() : 0;
     }
 
     public WebServer start(QuarkusTreeLogger logger, Options options) throws IOException, UnableToCompleteException {
+        final long start = System.nanoTime();
         this.currentLogger = logger;
         logger.setMaxDetail(options.getLogLevel());
+        CodeServerOutputs.setState(CodeServerOutputs.State.STARTING);
+        loadBindings();
 
         TreeLogger startupLogger = logger.branch(TreeLogger.Type.INFO, "Quarkus Super Dev Mode starting up");
 
-        File baseCacheDir = computePreferredCacheDir(this.baseCachePath, options.getModuleNames(), startupLogger);
+        // follow compiles so that their output can be served without going through the code server
+        options.setJobChangeListener(this::onJobChange);
+
+        File baseCacheDir = computePreferredCacheDir(this.baseCachePath, startupLogger);
+        enforceCacheBudget(baseCacheDir, startupLogger);
 
-        UnitCache unitCache = UnitCacheSingleton.get(startupLogger, null, baseCacheDir, new CompilerOptionsImpl(options));
+        // the unit cache is a singleton for the life of the jvm, only the counts are new for each start
+        CountingUnitCache unitCache = new CountingUnitCache(UnitCacheSingleton.get(startupLogger, null, baseCacheDir, new CompilerOptionsImpl(options)));
+        this.unitCache = unitCache;
 
         MinimalRebuildCacheManager minimalRebuildCacheManager = createMinimalRebuildCacheManager(logger, options, baseCacheDir);
 
@@ -55,8 +167,10 @@ public class QuarkusCodeServer extends CodeServer {
         this.outboxTable = outboxTable;
 
         JobEventTable eventTable = new JobEventTable();
+        this.eventTable = eventTable;
 
         JobRunner runner = new JobRunner(eventTable, minimalRebuildCacheManager);
+        this.runner = runner;
 
         JsonExporter exporter = new JsonExporter(options, outboxTable);
 
@@ -66,21 +180,232 @@ public class QuarkusCodeServer extends CodeServer {
 
         WebServer webServer = new WebServer(sourceHandler, symbolMapHandler, exporter, outboxTable, runner, eventTable, options.getBindAddress(), options.getPort());
         webServer.start(logger);
+        this.webServer = webServer;
+        CodeServerTimings.since(CodeServerTimings.Phase.START, start);
+
+        if (this.backgroundCompile) {
+            compileInBackground(logger);
+        } else {
+            CodeServerOutputs.setState(CodeServerOutputs.State.READY);
+        }
 
         return webServer;
     }
 
-    public void refresh() {
-        final TreeLogger logger = this.currentLogger != null ? this.currentLogger : new QuarkusTreeLogger(Logger.getLogger(this.getClass()));
-        if (this.outboxTable != null) {
+    /**
+     * Stops the web server and the threads that schedule refreshes and compress output. A compile that is already
+     * running on the job runner is left to finish.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (this.pendingRefresh != null) {
+                this.pendingRefresh.cancel(false);
+                this.pendingRefresh = null;
+            }
+            this.pendingModules.clear();
+        }
+        this.scheduler.shutdownNow();
+        this.compressor.shutdownNow();
+        if (this.webServer != null) {
             try {
-                this.outboxTable.defaultCompileAll(logger.branch(TreeLogger.Type.INFO, "Recompiling due to refreshed module source"));
-            } catch (UnableToCompleteException e) {
-                throw new RuntimeException(e);
+                this.webServer.stop();
+            } catch (Exception e) {
+                Logger.getLogger(this.getClass()).debugf("Could not stop the code server: %s", e.getMessage());
+            }
+            this.webServer = null;
+        }
+    }
+
+    /**
+     * Queues a compile of every module with the binding properties it was last served with (or the configured
+     * background bindings when it has not been served yet) so that the first load finds it compiled. A browser
+     * that needs another permutation still waits for its own compile. Compiles run on the job runner's own
+     * thread, a load that comes in while they run waits for them like any other recompile.
+     */
+    private void compileInBackground(final TreeLogger logger) {
+        final TreeLogger branch = logger.branch(TreeLogger.Type.INFO, "Compiling modules in the background");
+        final List<Job> jobs = new ArrayList<>();
+        for (final Outbox box : this.outboxTable.getOutboxes()) {
+            Map<String, String> bindings = this.lastBindings.get(box.getInputModuleName());
+            if (bindings == null) {
+                bindings = new HashMap<>(this.backgroundBindings);
+            }
+            final Job job = box.makeJob(bindings, branch);
+            this.backgroundJobs.add(job.getId());
+            jobs.add(job);
+        }
+        CodeServerOutputs.setState(jobs.isEmpty() ? CodeServerOutputs.State.READY : CodeServerOutputs.State.COMPILING);
+        for (final Job job : jobs) {
+            this.runner.submit(job);
+        }
+    }
+
+    /**
+     * Schedules the given modules to be compiled again once the recompile delay has passed. Every call before then
+     * restarts the delay and adds its modules, so a burst of changes ends up as one refresh.
+     *
+     * @param modules the (input) names of the modules that have changed
+     */
+    public synchronized void schedule(final Set<String> modules) {
+        this.pendingModules.addAll(modules);
+        if (this.pendingRefresh != null) {
+            this.pendingRefresh.cancel(false);
+        }
+        this.pendingRefresh = this.scheduler.schedule(this::refreshPending, this.recompileDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshPending() {
+        final Set<String> modules;
+        synchronized (this) {
+            modules = new LinkedHashSet<>(this.pendingModules);
+            this.pendingModules.clear();
+            this.pendingRefresh = null;
+        }
+        if (modules.isEmpty()) {
+            return;
+        }
+        try {
+            refresh(modules);
+        } catch (RuntimeException e) {
+            final TreeLogger logger = this.currentLogger != null ? this.currentLogger : new QuarkusTreeLogger(Logger.getLogger(this.getClass()));
+            logger.log(TreeLogger.Type.ERROR, "Could not recompile " + String.join(", ", modules), e);
+        }
+    }
+
+    /**
+     * Compiles the given modules again. Only modules that have already been compiled are submitted, a module that
+     * still holds its stub compiles the current sources the next time it is loaded anyway. Jobs go through the job
+     * runner, which only ever runs one compile at a time, and this returns as soon as they are queued. The previous
+     * output is served until each compile is done.
+     *
+     * A compile that is already running cannot be stopped, the new job is queued behind it and replaces its
+     * output. A job from an earlier refresh that is still waiting in the queue has not read any sources yet, so
+     * it is left to pick up the new changes instead of queueing another one.
+     *
+     * @param modules the (input) names of the modules that have changed
+     */
+    public void refresh(final Set<String> modules) {
+        final TreeLogger logger = this.currentLogger != null ? this.currentLogger : new QuarkusTreeLogger(Logger.getLogger(this.getClass()));
+        if (this.outboxTable == null || this.runner == null) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            final TreeLogger branch = logger.branch(TreeLogger.Type.INFO, "Recompiling due to refreshed module source: " + String.join(", ", modules));
+            for (final Outbox box : this.outboxTable.getOutboxes()) {
+                if (!modules.contains(box.getInputModuleName()) || box.containsStubCompile() || isQueued(this.refreshJobs.get(box.getInputModuleName()))) {
+                    continue;
+                }
+                final Map<String, String> bindings = this.lastBindings.get(box.getInputModuleName());
+                if (bindings == null) {
+                    // nothing to compile the same permutation with, go back to a stub that compiles on the next load
+                    box.maybePrecompile(branch);
+                    continue;
+                }
+                final Job job = box.makeJob(bindings, branch);
+                this.runner.submit(job);
+                this.refreshJobs.put(box.getInputModuleName(), job);
+            }
+        } catch (UnableToCompleteException e) {
+            throw new RuntimeException(e);
+        } finally {
+            // whatever the proxy has read from the code server may be out of date now
+            CodeServerOutputs.invalidate();
+            CodeServerTimings.since(CodeServerTimings.Phase.REFRESH, start);
+        }
+    }
+
+    private boolean isQueued(final Job job) {
+        if (job == null || this.eventTable == null) {
+            return false;
+        }
+        final JobEvent event = this.eventTable.getPublishedEvent(job);
+        return event != null && event.getStatus() == JobEvent.Status.WAITING;
+    }
+
+    private void onJobChange(final JobEvent event) {
+        if (event.getStatus() == JobEvent.Status.COMPILING) {
+            // published again with every progress update
+            this.compileStarts.putIfAbsent(event.getJobId(), System.nanoTime());
+        } else if (event.getStatus() != JobEvent.Status.WAITING) {
+            final Long compileStart = this.compileStarts.remove(event.getJobId());
+            if (compileStart != null) {
+                final long nanos = System.nanoTime() - compileStart;
+                CodeServerTimings.record(CodeServerTimings.Phase.COMPILE, nanos);
+                final String strategy = event.getCompileStrategy() != null ? " (" + event.getCompileStrategy().getJsonName() + ")" : "";
+                final String outcome = event.getStatus() == JobEvent.Status.SERVING ? "finished" : event.getStatus() == JobEvent.Status.ERROR ? "failed" : "stopped";
+                Logger.getLogger(this.getClass()).infof("Compile of %s %s after %dms%s", event.getInputModuleName(), outcome, TimeUnit.NANOSECONDS.toMillis(nanos), strategy);
+            }
+        }
+        if (event.getStatus() == JobEvent.Status.SERVING && event.getCompileDir() != null) {
+            // remembered across starts so that a background compile builds the permutation that is actually used
+            final Map<String, String> bindings = new HashMap<>(event.getBindings());
+            if (!bindings.equals(this.lastBindings.put(event.getInputModuleName(), bindings))) {
+                saveBindings();
+            }
+            CodeServerOutputs.publish(event.getOutputModuleName(), event.getCompileDir().getWarDir().toPath());
+            CodeServerOutputs.invalidate();
+            precompress(event.getCompileDir().getWarDir().toPath());
+        }
+        if ((event.getStatus() == JobEvent.Status.SERVING || event.getStatus() == JobEvent.Status.ERROR) && this.unitCache != null) {
+            Logger.getLogger(this.getClass()).debugf("Unit cache for %s: %s", event.getInputModuleName(), this.unitCache.takeStats());
+        }
+        if (event.getStatus() != JobEvent.Status.WAITING && event.getStatus() != JobEvent.Status.COMPILING && this.backgroundJobs.remove(event.getJobId())) {
+            if (event.getStatus() == JobEvent.Status.ERROR) {
+                this.backgroundFailed = true;
+            }
+            if (this.backgroundJobs.isEmpty()) {
+                CodeServerOutputs.setState(this.backgroundFailed ? CodeServerOutputs.State.FAILED : CodeServerOutputs.State.READY);
             }
         }
     }
 
+    private void loadBindings() {
+        final Path file = this.baseCachePath.resolve(BINDINGS_FILE);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        final Properties properties = new Properties();
+        try (final InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            return;
+        }
+        for (final String key : properties.stringPropertyNames()) {
+            final int separator = key.indexOf('|');
+            if (separator > 0) {
+                this.lastBindings.computeIfAbsent(key.substring(0, separator), module -> new HashMap<>()).put(key.substring(separator + 1), properties.getProperty(key));
+            }
+        }
+    }
+
+    private synchronized void saveBindings() {
+        final Properties properties = new Properties();
+        for (final Map.Entry<String, Map<String, String>> module : this.lastBindings.entrySet()) {
+            for (final Map.Entry<String, String> binding : module.getValue().entrySet()) {
+                properties.setProperty(module.getKey() + "|" + binding.getKey(), binding.getValue());
+            }
+        }
+        try (final OutputStream out = Files.newOutputStream(this.baseCachePath.resolve(BINDINGS_FILE))) {
+            properties.store(out, "binding properties of the last compile served for each module");
+        } catch (IOException e) {
+            Logger.getLogger(this.getClass()).debugf("Could not save binding properties: %s", e.getMessage());
+        }
+    }
+
+    private void precompress(final Path warDir) {
+        this.compressor.execute(() -> {
+            final TreeLogger logger = this.currentLogger != null ? this.currentLogger : new QuarkusTreeLogger(Logger.getLogger(this.getClass()));
+            try {
+                final long start = System.currentTimeMillis();
+                final int count = Gzip.compressAll(warDir);
+                logger.log(TreeLogger.Type.DEBUG, String.format("Compressed %d output files in %dms", count, System.currentTimeMillis() - start));
+            } catch (IOException | RuntimeException e) {
+                logger.log(TreeLogger.Type.WARN, "Could not compress compiled output in " + warDir, e);
+            }
+        });
+    }
+
     private static MinimalRebuildCacheManager createMinimalRebuildCacheManager(TreeLogger logger, Options options,File baseCacheDir) {
         return new MinimalRebuildCacheManager(
             logger,
@@ -91,7 +416,7 @@ public class QuarkusCodeServer extends CodeServer {
             "generateJsInteropExports", String.valueOf(options.shouldGenerateJsInteropExports()),
             "exportFilters", options.getJsInteropExportFilter().toString(),
             "methodDisplayMode", options.getMethodNameDisplayMode().name()));
-}
+    }
 
     private static OutboxTable makeOutboxTable(Options options, TreeLogger logger, UnitCache unitCache, MinimalRebuildCacheManager minimalRebuildCacheManager)
             throws IOException, UnableToCompleteException {
@@ -131,10 +456,15 @@ public class QuarkusCodeServer extends CodeServer {
         return workDir;
     }
 
-    public synchronized File computePreferredCacheDir(Path tmpDir, List<String> moduleNames, TreeLogger logger) {
+    /**
+     * The cache directory is shared by every module of the project, units from a module that is compiled on its
+     * own are found again when it is compiled along with others. It is only specific to the GWT version since a
+     * unit cache from another version is thrown away when it is read.
+     */
+    public synchronized File computePreferredCacheDir(Path tmpDir, TreeLogger logger) {
         String tempDir = tmpDir.toAbsolutePath().toString();
         String currentWorkingDirectory = System.getProperty("user.dir");
-        String preferredCacheDirName = "gwt-cache-" + StringUtils.toHexString(Md5Utils.getMd5Digest(currentWorkingDirectory + Joiner.on(", ").join(moduleNames)));
+        String preferredCacheDirName = "gwt-cache-" + StringUtils.toHexString(Md5Utils.getMd5Digest(currentWorkingDirectory + "|" + About.getGwtVersionNum()));
 
         File preferredCacheDir = new File(tempDir, preferredCacheDirName);
         if (!preferredCacheDir.exists() && !preferredCacheDir.mkdir()) {
@@ -143,4 +473,16 @@ public class QuarkusCodeServer extends CodeServer {
         }
         return preferredCacheDir;
     }
+
+    private void enforceCacheBudget(final File cacheDir, final TreeLogger logger) {
+        if (cacheDir == null) {
+            return;
+        }
+        try {
+            final CacheBudget.Result result = CacheBudget.enforce(this.baseCachePath, CacheBudget.GWT_CACHE_GLOB, cacheDir.toPath(), this.cacheMaxBytes);
+            logger.log(TreeLogger.Type.INFO, "cacheDir: " + cacheDir + " (" + result + ")");
+        } catch (IOException e) {
+            logger.log(TreeLogger.Type.WARN, "Could not check the size of cache directories in " + this.baseCachePath, e);
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package com.google.gwt.dev.javac;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often the compiler finds a compilation unit in the unit cache so that the effect of the cache can be
+ * reported. This lives in the GWT package since the cache is looked up by a package private key.
+ */
+public class CountingUnitCache implements UnitCache {
+
+    private final UnitCache delegate;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public CountingUnitCache(final UnitCache delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void add(final CompilationUnit newUnit) {
+        this.delegate.add(newUnit);
+    }
+
+    @Override
+    public void cleanup(final TreeLogger logger) {
+        this.delegate.cleanup(logger);
+    }
+
+    @Override
+    public void clear() throws UnableToCompleteException {
+        this.delegate.clear();
+    }
+
+    @Override
+    public CompilationUnit find(final ContentId contentId) {
+        return count(this.delegate.find(contentId));
+    }
+
+    @Override
+    public CompilationUnit find(final String resourcePath) {
+        return count(this.delegate.find(resourcePath));
+    }
+
+    @Override
+    public void remove(final CompilationUnit unit) {
+        this.delegate.remove(unit);
+    }
+
+    /**
+     * @return the hits and misses since the last call, as in '120 hits, 3 misses'
+     */
+    public String takeStats() {
+        return String.format("%d hits, %d misses", this.hits.getAndSet(0), this.misses.getAndSet(0));
+    }
+
+    private CompilationUnit count(final CompilationUnit unit) {
+        (unit != null ? this.hits : this.misses).incrementAndGet();
+        return unit;
+    }
+}
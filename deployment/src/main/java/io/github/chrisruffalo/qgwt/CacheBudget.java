@@ -0,0 +1,174 @@
+package io.github.chrisruffalo.qgwt;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Keeps cache directories (the GWT unit and minimal rebuild caches, compile output) within a disk budget. The
+ * directory in use is marked each time it is used and the directories that were used longest ago are removed until
+ * everything fits, the directory in use is never removed.
+ */
+public final class CacheBudget {
+
+    private static final Logger LOGGER = Logger.getLogger(CacheBudget.class);
+
+    /**
+     * The GWT unit and minimal rebuild cache directories in the temporary directory.
+     */
+    public static final String GWT_CACHE_GLOB = "gwt-cache-*";
+
+    /**
+     * Marks when a cache directory was last used.
+     */
+    public static final String LAST_USED = ".last-used";
+
+    /**
+     * What was found and removed by {@link #enforce(Path, String, Path, long)}.
+     */
+    public static final class Result {
+
+        private final long currentBytes;
+
+        private final boolean reused;
+
+        private final int evicted;
+
+        private final long evictedBytes;
+
+        private final long remainingBytes;
+
+        private Result(final long currentBytes, final boolean reused, final int evicted, final long evictedBytes, final long remainingBytes) {
+            this.currentBytes = currentBytes;
+            this.reused = reused;
+            this.evicted = evicted;
+            this.evictedBytes = evictedBytes;
+            this.remainingBytes = remainingBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s cache of %d KB, %d stale caches (%d KB) removed, %d KB in use by all caches",
+                reused ? "reused" : "new", currentBytes / 1024, evicted, evictedBytes / 1024, remainingBytes / 1024);
+        }
+    }
+
+    private static final class CacheDir {
+
+        private final Path path;
+
+        private final long lastUsed;
+
+        private final long bytes;
+
+        private CacheDir(final Path path, final long lastUsed, final long bytes) {
+            this.path = path;
+            this.lastUsed = lastUsed;
+            this.bytes = bytes;
+        }
+    }
+
+    private CacheBudget() {
+
+    }
+
+    /**
+     * Marks the current cache directory as used and removes the least recently used of the others until all of
+     * them fit in the budget.
+     *
+     * @param tmpDir the directory holding the cache directories
+     * @param glob the names of the cache directories in it
+     * @param current the cache directory in use
+     * @param maxBytes the budget for all cache directories together, 0 or less for no limit
+     * @return what was found and removed
+     */
+    public static Result enforce(final Path tmpDir, final String glob, final Path current, final long maxBytes) throws IOException {
+        final Path marker = current.resolve(LAST_USED);
+        final boolean reused = Files.exists(marker);
+        if (!reused) {
+            Files.createFile(marker);
+        }
+        Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+
+        final List<CacheDir> others = new ArrayList<>();
+        long currentBytes = 0;
+        long total = 0;
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(tmpDir, glob)) {
+            for (final Path directory : stream) {
+                if (!Files.isDirectory(directory)) {
+                    continue;
+                }
+                final long bytes = size(directory);
+                total += bytes;
+                if (Files.isSameFile(directory, current)) {
+                    currentBytes = bytes;
+                    continue;
+                }
+                final Path otherMarker = directory.resolve(LAST_USED);
+                final long lastUsed = Files.getLastModifiedTime(Files.exists(otherMarker) ? otherMarker : directory).toMillis();
+                others.add(new CacheDir(directory, lastUsed, bytes));
+            }
+        }
+
+        int evicted = 0;
+        long evictedBytes = 0;
+        if (maxBytes > 0) {
+            others.sort(Comparator.comparingLong(cacheDir -> cacheDir.lastUsed));
+            for (final CacheDir cacheDir : others) {
+                if (total <= maxBytes) {
+                    break;
+                }
+                if (delete(cacheDir.path)) {
+                    LOGGER.debugf("Removed stale cache %s (%d KB)", cacheDir.path, cacheDir.bytes / 1024);
+                    total -= cacheDir.bytes;
+                    evicted++;
+                    evictedBytes += cacheDir.bytes;
+                }
+            }
+            if (total > maxBytes) {
+                LOGGER.debugf("Cache %s alone is over the budget of %d KB", current, maxBytes / 1024);
+            }
+        }
+        return new Result(currentBytes, reused, evicted, evictedBytes, total);
+    }
+
+    private static long size(final Path directory) throws IOException {
+        final AtomicLong bytes = new AtomicLong();
+        try (final Stream<Path> stream = Files.walk(directory)) {
+            stream.filter(Files::isRegularFile).forEach(file -> {
+                try {
+                    bytes.addAndGet(Files.size(file));
+                } catch (IOException e) {
+                    // gone in the meantime, does not count
+                }
+            });
+        }
+        return bytes.get();
+    }
+
+    private static boolean delete(final Path directory) {
+        try (final Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.debugf("Could not remove stale cache %s: %s", directory, e.getMessage());
+            return false;
+        }
+    }
+}
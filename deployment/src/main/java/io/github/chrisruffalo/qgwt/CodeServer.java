@@ -3,20 +3,30 @@ package io.github.chrisruffalo.qgwt;
 import com.google.gwt.dev.codeserver.Options;
 import com.google.gwt.dev.codeserver.QuarkusCodeServer;
 import io.github.chrisruffalo.qgwt.configuration.GwtConfiguration;
+import io.github.chrisruffalo.qgwt.configuration.ProxyConfiguration;
+import io.github.chrisruffalo.qgwt.logger.AsyncTreeLogBuffer;
 import io.github.chrisruffalo.qgwt.logger.QuarkusTreeLogger;
-import io.github.chrisruffalo.qgwt.model.GwtInherits;
 import io.github.chrisruffalo.qgwt.model.GwtPathElement;
 import io.github.chrisruffalo.qgwt.model.SimpleGwtModuleXml;
+import io.github.chrisruffalo.qgwt.runtime.CodeServerMetricsRecorder;
 import io.github.chrisruffalo.qgwt.runtime.CodeServerProxy;
+import io.github.chrisruffalo.qgwt.runtime.CodeServerProxyRecorder;
+import io.github.chrisruffalo.qgwt.runtime.CodeServerTimings;
+import io.github.chrisruffalo.qgwt.runtime.PathPrefixMatcher;
 import io.quarkus.deployment.annotations.BuildStep;
+import io.quarkus.deployment.annotations.ExecutionTime;
+import io.quarkus.deployment.annotations.Record;
+import io.quarkus.deployment.builditem.CuratedApplicationShutdownBuildItem;
 import io.quarkus.deployment.builditem.FeatureBuildItem;
 import io.quarkus.deployment.builditem.LiveReloadBuildItem;
+import io.quarkus.deployment.builditem.ShutdownContextBuildItem;
+import io.quarkus.deployment.metrics.MetricsCapabilityBuildItem;
+import io.quarkus.deployment.metrics.MetricsFactoryConsumerBuildItem;
 import io.quarkus.undertow.deployment.FilterBuildItem;
+import io.quarkus.vertx.http.deployment.RouteBuildItem;
 import org.jboss.logging.Logger;
 
 import javax.servlet.DispatcherType;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -25,35 +35,136 @@ import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class CodeServer {
 
     private static final Logger LOGGER = Logger.getLogger(CodeServer.class);
 
-    private static final String GWT_BRIDGE = "com/google/gwt/core/client/GWTBridge.java";
+    static final String GWT_BRIDGE = "com/google/gwt/core/client/GWTBridge.java";
 
     private static final String FEATURE = "gwt-codeserver";
 
+    /**
+     * Order of the reactive proxy route, ahead of application routes so that it gets the first look at requests
+     * in the same way the servlet filter does.
+     */
+    private static final int REACTIVE_PROXY_ROUTE_ORDER = -100;
+
+    /**
+     * Paths that the code server answers itself, outside of the output directories of the modules.
+     */
+    private static final List<String> CODE_SERVER_PREFIXES = Arrays.asList(
+        "/recompile/",
+        "/recompile-requester/",
+        "/sourcemaps/",
+        "/log/",
+        "/policies/",
+        "/progress",
+        "/clean",
+        "/dev_mode_on.js"
+    );
+
     private static final AtomicReference<QuarkusCodeServer> quarkusCodeServerRef = new AtomicReference<>();
 
+    private static final AtomicReference<SourceRootWatcher> sourceRootWatcherRef = new AtomicReference<>();
+
+    private static final AtomicReference<SourceSync> sourceSyncRef = new AtomicReference<>();
+
     @BuildStep(onlyIf = IsDevMode.class)
     public FilterBuildItem addCodeServerProxyFilter(GwtConfiguration config) {
+        if (config.getProxy().getMode() != ProxyConfiguration.Mode.SERVLET) {
+            return null;
+        }
         return FilterBuildItem.builder("gwt-codeserver-proxy", CodeServerProxy.class.getName())
             .addFilterUrlMapping("/*", DispatcherType.REQUEST)
             .addInitParam(CodeServerProxy.BIND_ADDRESS_PARAM, config.getCodeServer().getBindAddress())
             .addInitParam(CodeServerProxy.BIND_PORT_PARAM, String.valueOf(config.getCodeServer().getPort()))
+            .addInitParam(CodeServerProxy.PREFIXES_PARAM, String.join(PathPrefixMatcher.SEPARATOR, servedPrefixes(config)))
+            .addInitParam(CodeServerProxy.SERVE_FROM_DISK_PARAM, String.valueOf(config.getProxy().isServeFromDisk()))
+            .addInitParam(CodeServerProxy.CACHE_SIZE_PARAM, String.valueOf(config.getProxy().getCacheSize().asLongValue()))
+            .addInitParam(CodeServerProxy.MAX_CONNECTIONS_PARAM, String.valueOf(config.getProxy().getMaxConnections()))
+            .addInitParam(CodeServerProxy.MAX_CONNECTIONS_PER_ROUTE_PARAM, String.valueOf(config.getProxy().getMaxConnectionsPerRoute()))
+            .addInitParam(CodeServerProxy.CONNECT_TIMEOUT_PARAM, String.valueOf(config.getProxy().getConnectTimeout().toMillis()))
+            .addInitParam(CodeServerProxy.READ_TIMEOUT_PARAM, String.valueOf(config.getProxy().getReadTimeout().toMillis()))
+            .addInitParam(CodeServerProxy.KEEP_ALIVE_PARAM, String.valueOf(config.getProxy().getKeepAlive().toMillis()))
+            .addInitParam(CodeServerProxy.CHUNK_SIZE_PARAM, String.valueOf(config.getProxy().getChunkSize().asLongValue()))
             .build();
     }
 
     @BuildStep(onlyIf = IsDevMode.class)
-    public FeatureBuildItem startCodeServer(LiveReloadBuildItem reload, GwtConfiguration config) {
+    @Record(ExecutionTime.RUNTIME_INIT)
+    public RouteBuildItem addReactiveCodeServerProxyRoute(GwtConfiguration config, CodeServerProxyRecorder recorder, ShutdownContextBuildItem shutdown) {
+        if (config.getProxy().getMode() != ProxyConfiguration.Mode.REACTIVE) {
+            return null;
+        }
+        final ProxyConfiguration proxy = config.getProxy();
+        return RouteBuildItem.builder()
+            .orderedRoute("/*", REACTIVE_PROXY_ROUTE_ORDER)
+            .handler(recorder.createReactiveProxy(
+                shutdown,
+                config.getCodeServer().getBindAddress(),
+                config.getCodeServer().getPort(),
+                String.join(PathPrefixMatcher.SEPARATOR, servedPrefixes(config)),
+                proxy.isServeFromDisk(),
+                proxy.getCacheSize().asLongValue(),
+                proxy.getMaxConnections(),
+                (int) proxy.getConnectTimeout().toMillis(),
+                proxy.getReadTimeout().toMillis(),
+                (int) proxy.getKeepAlive().toMillis()))
+            .build();
+    }
+
+    /**
+     * Exposes the dev mode timings as metrics when the application has a metrics extension, without one they are
+     * only logged.
+     */
+    @BuildStep(onlyIf = IsDevMode.class)
+    @Record(ExecutionTime.RUNTIME_INIT)
+    public MetricsFactoryConsumerBuildItem registerCodeServerMetrics(Optional<MetricsCapabilityBuildItem> metrics, CodeServerMetricsRecorder recorder) {
+        if (metrics.isEmpty()) {
+            return null;
+        }
+        return new MetricsFactoryConsumerBuildItem(recorder.registerTimings());
+    }
+
+    /**
+     * Computes the path prefixes served by the code server: the output directory of each configured module (named
+     * by 'rename-to' when present) and the code server's own endpoints. Public resources and stylesheets from the
+     * module and everything it inherits are published under the output directory so they are covered as well.
+     *
+     * @param config for the build
+     * @return the set of prefixes that should be sent to the code server
+     */
+    private static Set<String> servedPrefixes(final GwtConfiguration config) {
+        final Set<String> prefixes = new LinkedHashSet<>();
+        final ModuleGraphResolver resolver = new ModuleGraphResolver(Thread.currentThread().getContextClassLoader());
+        for (final String module : config.getModules()) {
+            final ModuleGraphResolver.ResolvedModule resolved = resolver.resolve(module);
+            String outputName = module;
+            if (resolved != null) {
+                final SimpleGwtModuleXml model = resolved.getModel();
+                if (model.getRenameTo() != null && !model.getRenameTo().trim().isEmpty()) {
+                    outputName = model.getRenameTo().trim();
+                }
+            }
+            prefixes.add(String.format("/%s/", outputName));
+        }
+        prefixes.addAll(CODE_SERVER_PREFIXES);
+        LOGGER.debugf("Code server prefixes: %s", String.join(", ", prefixes));
+        return prefixes;
+    }
+
+    @BuildStep(onlyIf = IsDevMode.class)
+    public FeatureBuildItem startCodeServer(LiveReloadBuildItem reload, GwtConfiguration config, Optional<MetricsCapabilityBuildItem> metrics, CuratedApplicationShutdownBuildItem shutdown) {
 
         if (config.getModules().isEmpty()) {
             LOGGER.warn("Skipping GWT code server execution, no modules given ('quarkus.gwt.modules')");
@@ -106,6 +217,8 @@ public class CodeServer {
         argList.add("11");
 
         // add all source roots
+        final List<Path> sourceDirectories = new LinkedList<>();
+        sourceDirectories.add(mainSourceRoot);
         argList.add("-src");
         argList.add(mainSourceRoot.toString());
         if(config.getSourceRoots().isPresent()) {
@@ -115,135 +228,117 @@ public class CodeServer {
                 .map(Paths::get)
                 .filter(Files::exists)
                 .forEach(path -> {
+                    sourceDirectories.add(path.normalize().toAbsolutePath());
                     argList.add("-src");
                     argList.add(path.normalize().toAbsolutePath().toString());
                 });
         }
 
         final List<String> selectedModules = new LinkedList<>(config.getModules());
-        final Set<Path> changableSourcePaths = new HashSet<>();
-        final List<String> modules = config.getModules();
 
         // the root path is also a source root
         argList.add("-src");
         argList.add(rootPath.toString());
 
-        // extract required jar resources to classpath
-        if (!reload.isLiveReload()) {
-            // we need to add java source files in the gwt-dev jar to the classpath so first find the GWT bridge
-            URL bridge = Thread.currentThread().getContextClassLoader().getResource(GWT_BRIDGE);
-            if (bridge == null) {
-                LOGGER.errorf("Could not start GWT code server because gwt-dev jar could not be found on classpath / %s could not be resolved as a resource", GWT_BRIDGE);
-                return null;
-            }
-            final JarExtractor jarExtractor = new JarExtractor();
-            jarExtractor.extract(bridge, rootPath);
-        }
-
-        // go through modules to add source directories after loading xml, adding modules as
-        // they are found but using this guard to prevent adding the same module multiple times
-        final Set<String> guard = new HashSet<>();
-        for(int idx = 0; idx < modules.size(); idx++) {
-            final String module = modules.get(idx);
-            guard.add(module);
-            final String xmlResourceLocation = String.format("%s.gwt.xml", module.replace(".", "/"));
-            final URL xmlResource = Thread.currentThread().getContextClassLoader().getResource(xmlResourceLocation);
-            if(null == xmlResource) {
-                LOGGER.warnf("Could not find '%s' for module '%s'", xmlResourceLocation, module);
-                continue;
-            }
-            Path xmlPath;
-            URI xmlUri = null;
-            try {
-                xmlUri = xmlResource.toURI();
-                xmlPath = Paths.get(xmlUri);
-            } catch (URISyntaxException uex) {
-                throw new RuntimeException(uex);
-            } catch (FileSystemNotFoundException fsne) {
-                xmlPath = null;
-            }
+        // a current index means nothing the module graph is built from has changed since it was last resolved
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final Path moduleGraphIndexFile = tmpDir.resolve("module-graph.idx");
+        final ModuleGraphIndex moduleGraphIndex = ModuleGraphIndex.load(moduleGraphIndexFile, config.getModules(), rootPath, classLoader);
+        final SourceRootIndex sourceRoots;
+        if (moduleGraphIndex != null) {
+            LOGGER.debugf("Module graph of %d modules is unchanged, skipping module resolution and extraction", moduleGraphIndex.getModules().size());
+            sourceRoots = moduleGraphIndex.getSourceRoots();
+        } else {
+            sourceRoots = new SourceRootIndex(rootPath);
+            final List<String> moduleNames = new LinkedList<>();
+
+            // jars are only unpacked once, later starts link what was already extracted, and everything the modules
+            // need is collected first so that it can all be extracted together
+            final JarFileSystems jarFileSystems = new JarFileSystems();
+            final ExtractionPipeline extractionPipeline = new ExtractionPipeline(new ExtractionCache(config.getExtractCacheDir()
+                .map(Paths::get)
+                .orElse(tmpDir.resolve("extract-cache"))
+                .normalize()
+                .toAbsolutePath(), jarFileSystems));
 
-            SimpleGwtModuleXml model;
-            JAXBContext context;
+            // jar file systems are shared by everything that extracts from them until extraction is done
+            final long extractionStart = System.nanoTime();
+            long resolutionNanos = 0;
             try {
-                context = JAXBContext.newInstance(SimpleGwtModuleXml.class);
-            } catch (JAXBException e) {
-                throw new RuntimeException(e);
-            }
-            try {
-                model = (SimpleGwtModuleXml) context.createUnmarshaller().unmarshal(xmlResource);
-            } catch (JAXBException e) {
-                throw new RuntimeException(e);
-            }
-            LOGGER.debugf("Working on loaded module: %s", xmlResource);
-
-            // add inherited modules
-            model.getInherits().stream().map(GwtInherits::getName)
-                .filter(moduleName -> !guard.contains(moduleName))
-                .forEach(moduleName -> {
-                    guard.add(moduleName);
-                    modules.add(moduleName);
-                });
-
-            final List<GwtPathElement> paths = new LinkedList<>();
-            paths.addAll(model.getSuperSources());
-            paths.addAll(model.getSources());
-            paths.addAll(model.getPublicResources());
-            paths.addAll(model.getStylesheets());
-
-            // extract path resources as needed
-            final ModuleExtractor resourceExtractor = new ModuleExtractor(xmlPath, xmlUri, rootPath, reload.isLiveReload());
-            paths.stream().map(GwtPathElement::getPath).forEach(resourceExtractor);
-            changableSourcePaths.addAll(resourceExtractor.getSourceRoots());
-        }
-
-        // determine recompile
-        AtomicBoolean recompile = new AtomicBoolean(false);
-
-        // update changed resources
-        if(reload.isLiveReload()) {
-            final List<String> needsUpdates = new LinkedList<>();
-            needsUpdates.addAll(reload.getChangeInformation().getChangedClasses());
-            needsUpdates.addAll(reload.getChangeInformation().getAddedClasses());
-
-            final List<String> needsRemoval = new LinkedList<>();
-            needsRemoval.addAll(reload.getChangeInformation().getChangedClasses());
-            needsRemoval.addAll(reload.getChangeInformation().getDeletedClasses());
+                // extract required jar resources to classpath
+                if (!reload.isLiveReload()) {
+                    // we need to add java source files in the gwt-dev jar to the classpath so first find the GWT bridge
+                    URL bridge = classLoader.getResource(GWT_BRIDGE);
+                    if (bridge == null) {
+                        LOGGER.errorf("Could not start GWT code server because gwt-dev jar could not be found on classpath / %s could not be resolved as a resource", GWT_BRIDGE);
+                        return null;
+                    }
+                    final JarExtractor jarExtractor = new JarExtractor(extractionPipeline, jarFileSystems);
+                    jarExtractor.extract(bridge, rootPath);
+                }
 
-            // remove changed java
-            needsRemoval
-                .stream()
-                .map(remove -> String.format("%s.java", remove.replace(".", "/")))
-                .map(java -> rootPath.resolve(java).normalize().toAbsolutePath())
-                .filter(Files::exists)
-                .forEach(target -> {
+                // go through the selected modules and everything they inherit to add source directories
+                final long resolutionStart = System.nanoTime();
+                final List<ModuleGraphResolver.ResolvedModule> modules = new ModuleGraphResolver(classLoader).resolveAll(config.getModules());
+                resolutionNanos = System.nanoTime() - resolutionStart;
+                CodeServerTimings.record(CodeServerTimings.Phase.MODULE_RESOLUTION, resolutionNanos);
+                final Map<String, Set<String>> inheritedBy = ModuleGraphResolver.inheritedBy(modules, config.getModules());
+                for (final ModuleGraphResolver.ResolvedModule module : modules) {
+                    moduleNames.add(module.getName());
+                    final URL xmlResource = module.getXmlResource();
+                    Path xmlPath;
+                    URI xmlUri = null;
                     try {
-                        Files.delete(target);
-                        recompile.set(true);
-                    } catch (IOException e) {
-                        LOGGER.errorf("Could not remove changed file %s", target);
+                        xmlUri = xmlResource.toURI();
+                        // only files count as being on disk, a jar uri also resolves while its file system is open
+                        xmlPath = "file".equals(xmlUri.getScheme()) ? Paths.get(xmlUri) : null;
+                    } catch (URISyntaxException uex) {
+                        throw new RuntimeException(uex);
+                    } catch (FileSystemNotFoundException fsne) {
+                        xmlPath = null;
                     }
-                });
 
-            // copy new files if they are inside the modules
-            needsUpdates
-                .stream()
-                .map(remove -> String.format("%s.java", remove.replace(".", "/")))
-                .map(java -> mainSourceRoot.resolve(java).normalize().toAbsolutePath())
-                .filter(Files::exists)
-                .filter(target -> changableSourcePaths.stream().anyMatch(changable -> mainSourceRoot.relativize(target).startsWith(rootPath.relativize(changable))))
-                .forEach(changed -> {
-                    final Path target = rootPath.resolve(mainSourceRoot.relativize(changed)).normalize().toAbsolutePath();
-                    try {
-                        Files.createDirectories(target.getParent());
-                        Files.copy(changed, target, StandardCopyOption.REPLACE_EXISTING);
-                        recompile.set(true);
-                    } catch (IOException e) {
-                        LOGGER.errorf("Could not copy changed file %s to target path %s", changed, target);
+                    final SimpleGwtModuleXml model = module.getModel();
+                    LOGGER.debugf("Working on loaded module: %s", xmlResource);
+
+                    final List<GwtPathElement> paths = new LinkedList<>();
+                    paths.addAll(model.getSuperSources());
+                    paths.addAll(model.getSources());
+                    paths.addAll(model.getPublicResources());
+                    paths.addAll(model.getStylesheets());
+
+                    // extract path resources as needed
+                    final ModuleExtractor resourceExtractor = new ModuleExtractor(xmlPath, xmlUri, rootPath, reload.isLiveReload(), extractionPipeline, jarFileSystems);
+                    paths.stream().map(GwtPathElement::getPath).forEach(resourceExtractor);
+                    final Set<String> owners = inheritedBy.getOrDefault(module.getName(), Collections.emptySet());
+                    resourceExtractor.getSourceRoots().forEach(sourceRoot -> sourceRoots.add(sourceRoot, owners));
+                    if (xmlPath != null) {
+                        sourceRoots.addDescriptor(Paths.get(ModuleGraphResolver.moduleXmlLocation(module.getName())), owners);
                     }
-                });
+                }
+
+                // extract everything the modules asked for
+                extractionPipeline.run();
+            } finally {
+                jarFileSystems.close();
+            }
+            // the extractors only collect what is needed, everything is extracted by the pipeline
+            CodeServerTimings.record(CodeServerTimings.Phase.EXTRACTION, System.nanoTime() - extractionStart - resolutionNanos);
+
+            // record the graph now that everything is extracted so that the next start can skip all of this
+            final List<String> resources = new LinkedList<>();
+            resources.add(GWT_BRIDGE);
+            moduleNames.stream().map(ModuleGraphResolver::moduleXmlLocation).forEach(resources::add);
+            ModuleGraphIndex.write(moduleGraphIndexFile, config.getModules(), rootPath, classLoader, resources, moduleNames, sourceRoots);
         }
 
+        // bring the module sources in the classes directory up to date, only content that changed needs a recompile
+        final SourceSync sourceSync = new SourceSync(tmpDir.resolve("source-sync.manifest"), rootPath, sourceDirectories, sourceRoots);
+        sourceSyncRef.set(sourceSync);
+        final long syncStart = System.nanoTime();
+        final Set<String> affectedModules = sourceSync.sync();
+        CodeServerTimings.since(CodeServerTimings.Phase.SOURCE_SYNC, syncStart);
+
         // if the modules are available add them all as arguments
         argList.addAll(selectedModules);
         LOGGER.infof("Selected modules: %s", String.join(", ", selectedModules));
@@ -253,26 +348,76 @@ public class CodeServer {
         if(quarkusCodeServerRef.get() == null) {
             LOGGER.info("Launching Code Server...");
             LOGGER.debugf("Args: %s", String.join(" ", args));
-            final QuarkusTreeLogger treeLogger = new QuarkusTreeLogger(LOGGER);
+            final QuarkusTreeLogger treeLogger = new QuarkusTreeLogger(LOGGER, config.getCodeServer().getLogBufferSize().map(size -> new AsyncTreeLogBuffer(size)).orElse(null));
             try {
                 final Options options = new Options();
                 if (!options.parseArgs(args)) {
                     LOGGER.errorf("Could not parse GWT code server options, feature '%s' will not be loaded", FEATURE);
                     return null;
                 }
-                final QuarkusCodeServer quarkusCodeServer = new QuarkusCodeServer(tmpDir);
+                final QuarkusCodeServer quarkusCodeServer = new QuarkusCodeServer(tmpDir, config.getCodeServer());
                 quarkusCodeServer.start(treeLogger, options);
                 quarkusCodeServerRef.set(quarkusCodeServer);
+                // live reloads keep the code server, it is only stopped when dev mode ends or restarts from scratch
+                shutdown.addCloseTask(CodeServer::stopCodeServer, true);
             } catch (Exception ex) {
                 LOGGER.errorf("Could not start GWT codeserver: %s", ex.getMessage());
                 return null;
             }
-        } else if(recompile.get()) {
-            // try and update
-            quarkusCodeServerRef.get().refresh();
+            if (metrics.isEmpty()) {
+                LOGGER.infof("Code server timings: %s", CodeServerTimings.summary());
+            }
+        } else if(!affectedModules.isEmpty()) {
+            LOGGER.debugf("Changed sources belong to modules: %s", String.join(", ", affectedModules));
+            // try and update only the modules that were changed, once changes stop coming in
+            quarkusCodeServerRef.get().schedule(affectedModules);
+        }
+
+        // changes that quarkus does not reload for (resources, templates, descriptors) are picked up by watching
+        if (config.getCodeServer().isWatchSources()) {
+            watchSources(sourceDirectories, sourceRoots);
         }
 
         return new FeatureBuildItem(FEATURE);
     }
 
+    private static void stopCodeServer() {
+        final SourceRootWatcher watcher = sourceRootWatcherRef.getAndSet(null);
+        if (watcher != null) {
+            watcher.close();
+        }
+        sourceSyncRef.set(null);
+        final QuarkusCodeServer quarkusCodeServer = quarkusCodeServerRef.getAndSet(null);
+        if (quarkusCodeServer != null) {
+            LOGGER.info("Stopping Code Server...");
+            quarkusCodeServer.stop();
+        }
+    }
+
+    private static void watchSources(final List<Path> sourceDirectories, final SourceRootIndex sourceRoots) {
+        SourceRootWatcher watcher = sourceRootWatcherRef.get();
+        if (watcher == null) {
+            try {
+                // the watcher only says where to look, the sync decides whether anything really changed
+                watcher = new SourceRootWatcher((changed, lost) -> {
+                    final QuarkusCodeServer quarkusCodeServer = quarkusCodeServerRef.get();
+                    final SourceSync sourceSync = sourceSyncRef.get();
+                    if (quarkusCodeServer != null && sourceSync != null) {
+                        final long syncStart = System.nanoTime();
+                        final Set<String> affectedModules = lost ? sourceSync.sync() : sourceSync.sync(changed);
+                        CodeServerTimings.since(CodeServerTimings.Phase.SOURCE_SYNC, syncStart);
+                        if (!affectedModules.isEmpty()) {
+                            quarkusCodeServer.schedule(affectedModules);
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                LOGGER.warnf("Could not watch GWT sources for changes: %s", e.getMessage());
+                return;
+            }
+            sourceRootWatcherRef.set(watcher);
+        }
+        watcher.watch(sourceDirectories, sourceRoots);
+    }
+
 }
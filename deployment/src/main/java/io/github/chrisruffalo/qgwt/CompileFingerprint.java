@@ -0,0 +1,246 @@
+package io.github.chrisruffalo.qgwt;
+
+import com.google.gwt.util.tools.shared.StringUtils;
+import io.github.chrisruffalo.qgwt.model.GwtPathElement;
+import io.github.chrisruffalo.qgwt.model.SimpleGwtModuleXml;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Hashes everything a production compile reads so that the output of an earlier compile with the same inputs can
+ * be used instead of compiling again: the compiler options, the module graph, every file under the source roots of
+ * the modules that are on disk (in the order the compiler looks for them) and the content of every jar a module
+ * or the compiler comes from.
+ */
+public class CompileFingerprint {
+
+    private static final Logger LOGGER = Logger.getLogger(CompileFingerprint.class);
+
+    /**
+     * Jar hashes by path, size and modification time, jars on the class path do not change within a build.
+     */
+    private static final Map<String, String> JAR_HASHES = new ConcurrentHashMap<>();
+
+    private static final String DEFAULT_SOURCE = "client";
+
+    private static final String DEFAULT_PUBLIC = "public";
+
+    private final MessageDigest digest;
+
+    private final Set<Path> jars = new LinkedHashSet<>();
+
+    private int files = 0;
+
+    private boolean complete = true;
+
+    public CompileFingerprint() {
+        try {
+            this.digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a compiler option, options must be added in the same order every time.
+     */
+    public CompileFingerprint option(final String name, final String value) {
+        update("option", name, value);
+        return this;
+    }
+
+    /**
+     * Adds the jar a resource is read from. A resource that is not in a jar on disk cannot be fingerprinted.
+     */
+    public CompileFingerprint jarOf(final URL resource) {
+        final Path jar = jar(resource);
+        if (jar != null) {
+            this.jars.add(jar);
+        } else {
+            LOGGER.debugf("Cannot fingerprint %s, it is not in a jar on disk", resource);
+            this.complete = false;
+        }
+        return this;
+    }
+
+    /**
+     * Adds the module graph and, for modules on disk, everything under their source roots. Modules in jars are
+     * covered by the hash of the jar.
+     *
+     * @param modules the resolved module graph
+     * @param rootPath the classes directory the descriptors on disk are read from
+     * @param sourcePath the directories the compiler reads sources from, in the order it looks in them
+     */
+    public CompileFingerprint modules(final List<ModuleGraphResolver.ResolvedModule> modules, final Path rootPath, final List<Path> sourcePath) throws IOException {
+        final Set<Path> sourceRoots = new LinkedHashSet<>();
+        for (final ModuleGraphResolver.ResolvedModule module : modules) {
+            update("module", module.getName());
+            final Path xmlPath = file(module.getXmlResource());
+            if (xmlPath == null) {
+                jarOf(module.getXmlResource());
+                continue;
+            }
+            file(ModuleGraphResolver.moduleXmlLocation(module.getName()), xmlPath);
+            for (final String path : paths(module.getModel())) {
+                final Path sourceRoot = xmlPath.resolveSibling(path).normalize();
+                if (sourceRoot.startsWith(rootPath)) {
+                    sourceRoots.add(rootPath.relativize(sourceRoot));
+                }
+            }
+        }
+
+        // the first directory on the source path that has a file is the one the compiler uses
+        final Map<String, Path> sources = new TreeMap<>();
+        for (final Path directory : sourcePath) {
+            for (final Path sourceRoot : sourceRoots) {
+                final Path root = directory.resolve(sourceRoot);
+                if (!Files.isDirectory(root)) {
+                    continue;
+                }
+                try (final Stream<Path> stream = Files.walk(root)) {
+                    stream.filter(Files::isRegularFile)
+                        .filter(file -> !file.getFileName().toString().endsWith(".class"))
+                        .forEach(file -> sources.putIfAbsent(directory.relativize(file).toString(), file));
+                }
+            }
+        }
+        for (final Map.Entry<String, Path> source : sources.entrySet()) {
+            file(source.getKey(), source.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * @return the paths the compiler reads for a module, relative to its descriptor, including the ones gwt uses
+     *         when the module does not name any: 'client' when there is no source or super source and 'public'
+     *         when there is no public path
+     */
+    static List<String> paths(final SimpleGwtModuleXml model) {
+        final List<GwtPathElement> elements = new LinkedList<>();
+        elements.addAll(model.getSuperSources());
+        elements.addAll(model.getSources());
+        elements.addAll(model.getPublicResources());
+        elements.addAll(model.getStylesheets());
+        final List<String> paths = new LinkedList<>();
+        for (final GwtPathElement element : elements) {
+            if (element.getPath() != null) {
+                paths.add(element.getPath());
+            }
+        }
+        if (model.getSources().isEmpty() && model.getSuperSources().isEmpty()) {
+            paths.add(DEFAULT_SOURCE);
+        }
+        if (model.getPublicResources().isEmpty()) {
+            paths.add(DEFAULT_PUBLIC);
+        }
+        return paths;
+    }
+
+    /**
+     * @return the fingerprint of everything that was added, as hex, or null if something could not be
+     *         fingerprinted
+     */
+    public String finish() throws IOException {
+        if (!this.complete) {
+            return null;
+        }
+        final long start = System.currentTimeMillis();
+        final List<Path> sorted = new LinkedList<>(this.jars);
+        sorted.sort(Comparator.comparing(Path::toString));
+        for (final Path jar : sorted) {
+            update("jar", jar.getFileName().toString(), jarHash(jar));
+        }
+        final String fingerprint = StringUtils.toHexString(this.digest.digest());
+        LOGGER.debugf("Fingerprint of %d source files and %d jars is %s (%dms to hash jars)", this.files, sorted.size(), fingerprint, System.currentTimeMillis() - start);
+        return fingerprint;
+    }
+
+    private void file(final String name, final Path file) throws IOException {
+        update("file", name);
+        this.digest.update(Files.readAllBytes(file));
+        this.files++;
+    }
+
+    private void update(final String... values) {
+        for (final String value : values) {
+            this.digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            // keeps 'ab' + 'c' apart from 'a' + 'bc'
+            this.digest.update((byte) 0);
+        }
+    }
+
+    private static String jarHash(final Path jar) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        final String key = jar + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        final String known = JAR_HASHES.get(key);
+        if (known != null) {
+            return known;
+        }
+        final MessageDigest jarDigest;
+        try {
+            jarDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final byte[] buffer = new byte[65536];
+        try (final InputStream in = Files.newInputStream(jar)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                jarDigest.update(buffer, 0, read);
+            }
+        }
+        final String hash = StringUtils.toHexString(jarDigest.digest());
+        JAR_HASHES.put(key, hash);
+        return hash;
+    }
+
+    /**
+     * @return the resource as a file on disk, or null if it is not one
+     */
+    private static Path file(final URL resource) {
+        try {
+            final URI uri = resource.toURI();
+            return "file".equals(uri.getScheme()) ? Paths.get(uri) : null;
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the jar on disk the resource is read from, or null if it is not in one
+     */
+    private static Path jar(final URL resource) {
+        final String location = resource.toString();
+        final int separator = location.indexOf("!/");
+        if (!location.startsWith("jar:file:") || separator < 0) {
+            return null;
+        }
+        try {
+            final Path jar = Paths.get(new URI(location.substring("jar:".length(), separator)));
+            return Files.isRegularFile(jar) ? jar : null;
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
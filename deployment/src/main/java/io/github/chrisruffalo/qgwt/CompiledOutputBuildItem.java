@@ -0,0 +1,25 @@
+package io.github.chrisruffalo.qgwt;
+
+import io.quarkus.builder.item.SimpleBuildItem;
+
+import java.util.List;
+
+/**
+ * The output of the production compile that was packaged with the application.
+ */
+public final class CompiledOutputBuildItem extends SimpleBuildItem {
+
+    private final List<String> outputDirectories;
+
+    /**
+     * @param outputDirectories the top level directories of the output, one for each module (as named by
+     *                          'rename-to')
+     */
+    public CompiledOutputBuildItem(final List<String> outputDirectories) {
+        this.outputDirectories = outputDirectories;
+    }
+
+    public List<String> getOutputDirectories() {
+        return outputDirectories;
+    }
+}
@@ -0,0 +1,274 @@
+package io.github.chrisruffalo.qgwt;
+
+import com.google.gwt.util.tools.shared.Md5Utils;
+import com.google.gwt.util.tools.shared.StringUtils;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the files extracted from jars in a cache directory so that a jar is only ever unpacked once. Each entry
+ * is keyed by the name, size and modification time of the jar and the path that was extracted from it, so a
+ * changed jar is simply a new entry.
+ *
+ * Cached files are copied into the target directory rather than linked, so a tool that writes to an extracted
+ * file in place cannot change the cache for every later build. The manifest of an entry keeps the size and
+ * modification time of each cached file and an entry that no longer matches it is extracted again.
+ *
+ * Once an entry has been put into a target directory that is remembered as well and the same extraction is
+ * skipped entirely until the target directory is recreated (for example by a clean build). Since a recreated
+ * directory can get the identity of the old one back the first file of the entry must also still be there. Placing the files is
+ * left to the {@link ExtractionPipeline} so that it can be spread over several threads.
+ */
+public class ExtractionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ExtractionCache.class);
+
+    private static final String FILES = "files";
+
+    private static final String MANIFEST = "manifest";
+
+    private static final String TARGETS = "targets";
+
+    private final Path cacheRoot;
+
+    private final JarFileSystems fileSystems;
+
+    public ExtractionCache(final Path cacheRoot, final JarFileSystems fileSystems) {
+        this.cacheRoot = cacheRoot;
+        this.fileSystems = fileSystems;
+    }
+
+    /**
+     * The extracted contents of one entry of a jar as they relate to a target directory.
+     */
+    public static final class Entry {
+
+        private final Path jar;
+
+        private final String entry;
+
+        private final Path files;
+
+        private final List<String> manifest;
+
+        private final Path marker;
+
+        private final String targetIdentity;
+
+        private final boolean upToDate;
+
+        private Entry(final Path jar, final String entry, final Path files, final List<String> manifest, final Path marker, final String targetIdentity, final boolean upToDate) {
+            this.jar = jar;
+            this.entry = entry;
+            this.files = files;
+            this.manifest = manifest;
+            this.marker = marker;
+            this.targetIdentity = targetIdentity;
+            this.upToDate = upToDate;
+        }
+
+        public Path getJar() {
+            return jar;
+        }
+
+        public String getEntry() {
+            return entry;
+        }
+
+        /**
+         * @return the paths of the extracted files relative to the target directory
+         */
+        public List<String> getManifest() {
+            return manifest;
+        }
+
+        /**
+         * @return the cached copy of an extracted file
+         */
+        public Path getCachedFile(final String relative) {
+            return files.resolve(relative);
+        }
+
+        /**
+         * @return true if the target directory already holds everything in this entry
+         */
+        public boolean isUpToDate() {
+            return upToDate;
+        }
+    }
+
+    /**
+     * Makes sure the given entry of the jar is in the cache, unpacking it if it is not.
+     *
+     * @param jar the jar file on disk
+     * @param entry the path inside the jar to extract, either a directory or a single file ('/' for everything)
+     * @param targetRoot the directory the entry will be extracted to, paths inside the jar are kept relative to it
+     * @return the cached entry
+     */
+    public Entry resolve(final Path jar, final String entry, final Path targetRoot) throws IOException {
+        final Path cached = this.cacheRoot.resolve(key(jar, entry));
+        if (!Files.isRegularFile(cached.resolve(MANIFEST))) {
+            populate(jar, entry, cached);
+        }
+
+        final Path marker = cached.resolve(TARGETS).resolve(hash(targetRoot.toAbsolutePath().toString()));
+        final String targetIdentity = identity(targetRoot);
+        final boolean upToDate = isPlaced(marker, targetIdentity, targetRoot);
+        if (upToDate) {
+            return new Entry(jar, entry, cached.resolve(FILES), Collections.emptyList(), marker, targetIdentity, true);
+        }
+        List<String> manifest = readManifest(cached);
+        if (manifest == null) {
+            LOGGER.debugf("Cached extraction of %s!%s has changed, extracting it again", jar.getFileName(), entry);
+            delete(cached);
+            populate(jar, entry, cached);
+            manifest = readManifest(cached);
+            if (manifest == null) {
+                throw new IOException(String.format("Could not extract %s!%s to the cache", jar.getFileName(), entry));
+            }
+        }
+        return new Entry(jar, entry, cached.resolve(FILES), manifest, marker, targetIdentity, false);
+    }
+
+    /**
+     * @return the paths of the files in the entry, or null if any of them is not the file that was extracted
+     */
+    private static List<String> readManifest(final Path cached) throws IOException {
+        final List<String> manifest = new ArrayList<>();
+        final Path files = cached.resolve(FILES);
+        for (final String line : Files.readAllLines(cached.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            final String[] parts = line.split("\t");
+            if (parts.length != 3) {
+                return null;
+            }
+            final Path file = files.resolve(parts[0]);
+            if (!Files.isRegularFile(file) || !stamp(file).equals(parts[1] + "\t" + parts[2])) {
+                return null;
+            }
+            manifest.add(parts[0]);
+        }
+        return manifest;
+    }
+
+    private static String stamp(final Path file) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return attributes.size() + "\t" + attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Remembers that every file of the entry has been placed in the target directory so that it can be skipped
+     * the next time.
+     */
+    public void markPlaced(final Entry entry) throws IOException {
+        Files.createDirectories(entry.marker.getParent());
+        final String sentinel = entry.manifest.isEmpty() ? "" : entry.manifest.get(0);
+        Files.write(entry.marker, Arrays.asList(entry.targetIdentity, sentinel), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if the marker was written for the target directory as it is now and the file it names is still
+     *         in it
+     */
+    private static boolean isPlaced(final Path marker, final String targetIdentity, final Path targetRoot) throws IOException {
+        if (!Files.isRegularFile(marker)) {
+            return false;
+        }
+        final List<String> lines = Files.readAllLines(marker, StandardCharsets.UTF_8);
+        if (lines.size() != 2 || !targetIdentity.equals(lines.get(0))) {
+            return false;
+        }
+        return lines.get(1).isEmpty() || Files.isRegularFile(targetRoot.resolve(lines.get(1)));
+    }
+
+    /**
+     * Unpacks the entry into a staging directory that is moved into place when complete so that an interrupted
+     * extraction is never mistaken for a cached one.
+     */
+    private void populate(final Path jar, final String entry, final Path cached) throws IOException {
+        Files.createDirectories(this.cacheRoot);
+        final Path staging = Files.createTempDirectory(this.cacheRoot, cached.getFileName().toString() + "-");
+        final Path files = staging.resolve(FILES);
+        final List<String> manifest = new ArrayList<>();
+        try (final JarFileSystems.Handle handle = this.fileSystems.open(jar)) {
+            final Path root = handle.getFileSystem().getPath(entry);
+            if (Files.exists(root)) {
+                try (final Stream<Path> stream = Files.walk(root)) {
+                    for (final Path source : (Iterable<Path>) stream::iterator) {
+                        if (!Files.isRegularFile(source) || source.toString().endsWith(".class")) {
+                            continue;
+                        }
+                        String relative = source.toString();
+                        while (relative.startsWith("/")) {
+                            relative = relative.substring(1);
+                        }
+                        final Path target = files.resolve(relative);
+                        Files.createDirectories(target.getParent());
+                        Files.copy(source, target);
+                        manifest.add(relative + "\t" + stamp(target));
+                    }
+                }
+            }
+        }
+        Files.write(staging.resolve(MANIFEST), manifest, StandardCharsets.UTF_8);
+        try {
+            Files.move(staging, cached, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException ex) {
+            // another extraction got there first, theirs is just as good
+            delete(staging);
+        }
+    }
+
+    /**
+     * Puts a cached file at the target path, replacing whatever is there. The parent directory must exist.
+     */
+    public void place(final Path cachedFile, final Path target) throws IOException {
+        Files.copy(cachedFile, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return something that changes if the directory is deleted and created again
+     */
+    static String identity(final Path directory) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class);
+        final Object fileKey = attributes.fileKey();
+        return fileKey != null ? fileKey.toString() : attributes.creationTime().toString();
+    }
+
+    private static String key(final Path jar, final String entry) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        return jar.getFileName().toString() + "-" + hash(String.format("%s|%d|%d|%s", jar.getFileName(), attributes.size(), attributes.lastModifiedTime().toMillis(), entry));
+    }
+
+    private static String hash(final String value) {
+        return StringUtils.toHexString(Md5Utils.getMd5Digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void delete(final Path directory) {
+        try (final Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.debugf("Could not remove %s: %s", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package io.github.chrisruffalo.qgwt;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects everything that needs to be extracted from jars while the modules are being read and then does all of
+ * it at once on a bounded pool of threads. Jars that are not cached yet are unpacked in parallel, the target
+ * directories for every file are created once, and the files are placed in batches spread over the pool.
+ *
+ * When more than one entry provides the same file the entry that was added last wins, the same as when the
+ * extractions were done one after another.
+ */
+public class ExtractionPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(ExtractionPipeline.class);
+
+    private static final int BATCH_SIZE = 256;
+
+    private static final int MAX_THREADS = 8;
+
+    private static final class Task {
+
+        private final Path jar;
+
+        private final String entry;
+
+        private final Path targetRoot;
+
+        private Task(final Path jar, final String entry, final Path targetRoot) {
+            this.jar = jar;
+            this.entry = entry;
+            this.targetRoot = targetRoot;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Task task = (Task) o;
+            return jar.equals(task.jar) && entry.equals(task.entry) && targetRoot.equals(task.targetRoot);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(jar, entry, targetRoot);
+        }
+    }
+
+    private static final class JarStats {
+
+        private final AtomicLong resolveNanos = new AtomicLong();
+
+        private final AtomicLong placeNanos = new AtomicLong();
+
+        private final AtomicInteger files = new AtomicInteger();
+
+        private final AtomicLong bytes = new AtomicLong();
+    }
+
+    private static final class Placement {
+
+        private final Path source;
+
+        private final Path target;
+
+        private final ExtractionCache.Entry owner;
+
+        private Placement(final Path source, final Path target, final ExtractionCache.Entry owner) {
+            this.source = source;
+            this.target = target;
+            this.owner = owner;
+        }
+    }
+
+    private final ExtractionCache cache;
+
+    private final Set<Task> tasks = new LinkedHashSet<>();
+
+    public ExtractionPipeline(final ExtractionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Queues every non-class file under the given entry of the jar for extraction to the target directory.
+     *
+     * @param jar the jar file on disk
+     * @param entry the path inside the jar to extract, either a directory or a single file ('/' for everything)
+     * @param targetRoot the directory to extract to, paths inside the jar are kept relative to it
+     */
+    public synchronized void add(final Path jar, final String entry, final Path targetRoot) {
+        this.tasks.add(new Task(jar, entry, targetRoot));
+    }
+
+    /**
+     * Extracts everything that was queued.
+     */
+    public synchronized void run() {
+        if (this.tasks.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final int threads = Math.max(2, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "qgwt-extract-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Map<Path, JarStats> stats = new ConcurrentHashMap<>();
+        final Set<ExtractionCache.Entry> failed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        try {
+            // make sure every entry is in the cache, this is where jars that have not been seen before are unpacked
+            final List<Future<ExtractionCache.Entry>> resolving = new ArrayList<>(this.tasks.size());
+            for (final Task task : this.tasks) {
+                resolving.add(executor.submit(() -> {
+                    final long resolveStart = System.nanoTime();
+                    try {
+                        return this.cache.resolve(task.jar, task.entry, task.targetRoot);
+                    } catch (IOException ex) {
+                        LOGGER.errorf("Could not extract %s!%s: %s", task.jar, task.entry, ex.getMessage());
+                        return null;
+                    } finally {
+                        stats.computeIfAbsent(task.jar, jar -> new JarStats()).resolveNanos.addAndGet(System.nanoTime() - resolveStart);
+                    }
+                }));
+            }
+
+            // work out where every file goes, the last entry to provide a file wins
+            final List<ExtractionCache.Entry> entries = new ArrayList<>(resolving.size());
+            final Map<Path, Placement> placements = new LinkedHashMap<>();
+            final Iterator<Task> taskIterator = this.tasks.iterator();
+            for (final Future<ExtractionCache.Entry> future : resolving) {
+                final Task task = taskIterator.next();
+                final ExtractionCache.Entry entry = future.get();
+                if (entry == null || entry.isUpToDate()) {
+                    continue;
+                }
+                entries.add(entry);
+                for (final String relative : entry.getManifest()) {
+                    final Path target = task.targetRoot.resolve(relative);
+                    placements.remove(target);
+                    placements.put(target, new Placement(entry.getCachedFile(relative), target, entry));
+                }
+            }
+
+            // create each directory once, parents sort ahead of their children
+            final Set<Path> directories = new TreeSet<>();
+            for (final Path target : placements.keySet()) {
+                directories.add(target.getParent());
+            }
+            for (final Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+
+            // place files in batches across the pool
+            final List<Placement> all = new ArrayList<>(placements.values());
+            final List<Future<?>> placing = new ArrayList<>();
+            for (int from = 0; from < all.size(); from += BATCH_SIZE) {
+                final List<Placement> batch = all.subList(from, Math.min(all.size(), from + BATCH_SIZE));
+                placing.add(executor.submit(() -> {
+                    for (final Placement placement : batch) {
+                        final long placeStart = System.nanoTime();
+                        final JarStats jarStats = stats.get(placement.owner.getJar());
+                        try {
+                            final long size = Files.size(placement.source);
+                            this.cache.place(placement.source, placement.target);
+                            jarStats.files.incrementAndGet();
+                            jarStats.bytes.addAndGet(size);
+                        } catch (IOException ex) {
+                            LOGGER.errorf("Could not extract %s to %s: %s", placement.owner.getJar() + "!" + placement.source.getFileName(), placement.target, ex.getMessage());
+                            failed.add(placement.owner);
+                        } finally {
+                            jarStats.placeNanos.addAndGet(System.nanoTime() - placeStart);
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : placing) {
+                future.get();
+            }
+
+            // only remember entries that made it completely so anything that failed is tried again next time
+            for (final ExtractionCache.Entry entry : entries) {
+                if (!failed.contains(entry)) {
+                    this.cache.markPlaced(entry);
+                }
+            }
+        } catch (IOException | ExecutionException ex) {
+            throw new RuntimeException("Could not extract jar resources", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while extracting jar resources", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int totalFiles = 0;
+        long totalBytes = 0;
+        for (final Map.Entry<Path, JarStats> jarStats : stats.entrySet()) {
+            final JarStats value = jarStats.getValue();
+            totalFiles += value.files.get();
+            totalBytes += value.bytes.get();
+            LOGGER.debugf("Extracted %d files (%d bytes) from %s, unpacking took %dms and placing %dms",
+                value.files.get(), value.bytes.get(), jarStats.getKey().getFileName(), value.resolveNanos.get() / 1_000_000, value.placeNanos.get() / 1_000_000);
+        }
+        if (totalFiles > 0) {
+            LOGGER.infof("Extracted %d files (%d bytes) from %d jars on %d threads in %dms",
+                totalFiles, totalBytes, stats.size(), threads, (System.nanoTime() - start) / 1_000_000);
+        } else {
+            LOGGER.debugf("Extracted resources from %d jars are up to date (%dms)", stats.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        this.tasks.clear();
+    }
+}
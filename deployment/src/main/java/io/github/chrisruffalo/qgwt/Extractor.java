@@ -3,8 +3,11 @@ package io.github.chrisruffalo.qgwt;
 import org.jboss.logging.Logger;
 
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.ProviderMismatchException;
 import java.nio.file.StandardCopyOption;
 import java.util.stream.Stream;
@@ -13,8 +16,57 @@ public abstract class Extractor {
 
     private Logger logger;
 
+    /**
+     * When present, jar entries are queued to be extracted through the cache with everything else instead of
+     * being copied file by file right away.
+     */
+    protected final ExtractionPipeline pipeline;
+
+    /**
+     * Jar file systems shared with everything else in the build step, when present.
+     */
+    protected final JarFileSystems fileSystems;
+
     public Extractor() {
+        this(null, null);
+    }
+
+    public Extractor(final ExtractionPipeline pipeline, final JarFileSystems fileSystems) {
         this.logger = Logger.getLogger(this.getClass());
+        this.pipeline = pipeline;
+        this.fileSystems = fileSystems;
+    }
+
+    /**
+     * Opens the file system for a jar, shared if possible, and only for the caller otherwise.
+     *
+     * @param jarUri the uri of the jar itself, as in 'jar:file:/path/to/some.jar'
+     */
+    protected JarFileSystems.Handle openJar(final URI jarUri) throws IOException {
+        if (this.fileSystems != null) {
+            return this.fileSystems.open(jarUri);
+        }
+        // a closed registry closes the file system as soon as the handle is released
+        final JarFileSystems own = new JarFileSystems();
+        final JarFileSystems.Handle handle = own.open(jarUri);
+        own.close();
+        return handle;
+    }
+
+    /**
+     * @param jarUri the uri of the jar without the 'jar:' scheme or entry, as in 'file:/path/to/some.jar'
+     * @return the jar on disk, or null if it cannot be queued
+     */
+    protected Path cacheableJar(final String jarUri) {
+        if (this.pipeline == null || !jarUri.startsWith("file:")) {
+            return null;
+        }
+        try {
+            final Path jar = Paths.get(new URI(jarUri));
+            return Files.isRegularFile(jar) ? jar : null;
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return null;
+        }
     }
 
     protected void processStreamToDirectory(final String inputArchive, final Stream<Path> stream, final Path targetRoot) {
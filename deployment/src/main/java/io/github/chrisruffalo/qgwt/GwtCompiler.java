@@ -0,0 +1,443 @@
+package io.github.chrisruffalo.qgwt;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.About;
+import com.google.gwt.dev.Compiler;
+import com.google.gwt.dev.CompilerOptionsImpl;
+import com.google.gwt.dev.MinimalRebuildCache;
+import com.google.gwt.dev.PermutationWorkerFactory;
+import com.google.gwt.dev.ThreadedPermutationWorkerFactory;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.ModuleDefLoader;
+import com.google.gwt.dev.cfg.ResourceLoader;
+import com.google.gwt.dev.cfg.ResourceLoaders;
+import com.google.gwt.dev.jjs.JsOutputOption;
+import com.google.gwt.dev.util.arg.SourceLevel;
+import io.github.chrisruffalo.qgwt.configuration.CompilerConfiguration;
+import io.github.chrisruffalo.qgwt.configuration.GwtConfiguration;
+import io.github.chrisruffalo.qgwt.logger.QuarkusTreeLogger;
+import io.github.chrisruffalo.qgwt.model.GwtPathElement;
+import io.github.chrisruffalo.qgwt.model.SimpleGwtModuleXml;
+import io.github.chrisruffalo.qgwt.runtime.CompiledOutputIndex;
+import io.github.chrisruffalo.qgwt.runtime.CompiledOutputRecorder;
+import io.github.chrisruffalo.qgwt.runtime.Gzip;
+import io.quarkus.deployment.IsNormal;
+import io.quarkus.deployment.annotations.BuildProducer;
+import io.quarkus.deployment.annotations.BuildStep;
+import io.quarkus.deployment.annotations.ExecutionTime;
+import io.quarkus.deployment.annotations.Record;
+import io.quarkus.deployment.builditem.FeatureBuildItem;
+import io.quarkus.deployment.builditem.GeneratedResourceBuildItem;
+import io.quarkus.deployment.builditem.nativeimage.NativeImageResourceBuildItem;
+import io.quarkus.deployment.pkg.builditem.OutputTargetBuildItem;
+import io.quarkus.vertx.http.deployment.RouteBuildItem;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+import org.jboss.logging.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the configured modules with the GWT compiler as part of a production build and packages the output with
+ * the application, without a separate GWT build. The output is indexed as it is packaged and served by its own
+ * route with headers that were worked out at build time.
+ *
+ * The output of each compile is kept in a cache directory named by the fingerprint of everything the compile read,
+ * a build with the same fingerprint uses that output instead of compiling again.
+ */
+public class GwtCompiler {
+
+    private static final Logger LOGGER = Logger.getLogger(GwtCompiler.class);
+
+    private static final String FEATURE = "gwt-compiler";
+
+    /**
+     * The part of the war directory that is not meant to be served.
+     */
+    private static final String WEB_INF = "WEB-INF/";
+
+    /**
+     * The names of the compile output directories in the cache directory, followed by the fingerprint.
+     */
+    private static final String OUTPUT_CACHE_PREFIX = "gwtc-";
+
+    @BuildStep(onlyIf = IsNormal.class)
+    public FeatureBuildItem compileModules(GwtConfiguration config, OutputTargetBuildItem outputTarget, BuildProducer<GeneratedResourceBuildItem> generatedResources, BuildProducer<NativeImageResourceBuildItem> nativeImageResources, BuildProducer<CompiledOutputBuildItem> compiledOutput) {
+        if (!config.getCompiler().isEnabled()) {
+            LOGGER.debug("GWT compiler is disabled ('quarkus.gwt.compiler.enabled')");
+            return null;
+        }
+
+        if (config.getModules().isEmpty()) {
+            LOGGER.warn("Skipping GWT compile, no modules given ('quarkus.gwt.modules')");
+            return null;
+        }
+
+        // relative paths are relative to the project, which is not the working directory in a multi module build
+        final Path projectDir = outputTarget.getOutputDirectory().toAbsolutePath().getParent();
+
+        final Path mainSourceRoot = projectDir.resolve(config.getSourceRoot()).normalize();
+        if (!Files.isDirectory(mainSourceRoot)) {
+            LOGGER.errorf("Could not find or read main source root directory '%s'", mainSourceRoot);
+            return null;
+        }
+
+        final Path rootPath = projectDir.resolve(config.getClassesDir()).normalize();
+        if (!Files.isDirectory(rootPath)) {
+            LOGGER.errorf("Classes root '%s' %s", rootPath.toString(), Files.exists(rootPath) ? "is not a directory" : "does not exist");
+            return null;
+        }
+
+        final Path tmpDir = projectDir.resolve(config.getTempDir()).normalize();
+        final Path compileDir = tmpDir.resolve("gwtc");
+        final Path sourcesDir = compileDir.resolve("sources");
+        final Path warDir = compileDir.resolve("war");
+        final Path workDir = compileDir.resolve("work");
+        final Path deployDir = compileDir.resolve("deploy");
+        try {
+            // output from an earlier build must not end up in this one
+            delete(warDir);
+            delete(deployDir);
+            Files.createDirectories(sourcesDir);
+            Files.createDirectories(warDir);
+            Files.createDirectories(workDir);
+            Files.createDirectories(deployDir);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not create GWT compile directory '%s'", compileDir), e);
+        }
+
+        // the same source directories as the code server, the compiler scans them for module sources
+        final List<Path> sourceDirectories = new LinkedList<>();
+        sourceDirectories.add(mainSourceRoot);
+        config.getSourceRoots().orElse(Collections.emptyList()).stream()
+            .filter(path -> path != null && !path.isEmpty())
+            .map(path -> projectDir.resolve(path).normalize())
+            .filter(Files::exists)
+            .forEach(sourceDirectories::add);
+
+        final CompilerConfiguration compiler = config.getCompiler();
+        final CompilerOptionsImpl options = new CompilerOptionsImpl();
+        options.setWarDir(warDir.toFile());
+        options.setWorkDir(workDir.toFile());
+        options.setDeployDir(deployDir.toFile());
+        options.setLocalWorkers(Math.max(1, compiler.getLocalWorkers().orElse(Runtime.getRuntime().availableProcessors())));
+        options.setSourceLevel(SourceLevel.JAVA11);
+        options.setOptimizationLevel(compiler.getOptimize());
+        options.setLogLevel(TreeLogger.INFO);
+        try {
+            options.setOutput(JsOutputOption.valueOf(compiler.getStyle().trim().toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException ex) {
+            throw new RuntimeException(String.format("Unknown GWT output style '%s' ('quarkus.gwt.compiler.style')", compiler.getStyle()), ex);
+        }
+
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final List<ModuleGraphResolver.ResolvedModule> modules = new ModuleGraphResolver(classLoader).resolveAll(config.getModules());
+
+        // the same inputs compile to the same output, which may still be there from an earlier build
+        final Path outputCacheDir = compiler.getCacheDir().map(projectDir::resolve).orElse(tmpDir.resolve("compile-cache")).normalize();
+        final String fingerprint = fingerprint(config, options, classLoader, modules, rootPath, sourceDirectories);
+        final Path cachedOutput = fingerprint != null ? outputCacheDir.resolve(OUTPUT_CACHE_PREFIX + fingerprint) : null;
+        if (cachedOutput != null && Files.isDirectory(cachedOutput)) {
+            LOGGER.infof("GWT compile inputs are unchanged, using the output of an earlier compile (%s)", fingerprint);
+            try {
+                copy(cachedOutput, warDir);
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Could not restore GWT compile output from '%s'", cachedOutput), e);
+            }
+            enforceCacheBudget(outputCacheDir, cachedOutput, compiler.getCacheMaxSize().asLongValue());
+        } else {
+            compile(config, options, classLoader, modules, projectDir, tmpDir, sourceDirectories, sourcesDir, rootPath);
+            if (cachedOutput != null) {
+                store(warDir, cachedOutput);
+                enforceCacheBudget(outputCacheDir, cachedOutput, compiler.getCacheMaxSize().asLongValue());
+            }
+        }
+
+        compiledOutput.produce(publish(warDir, config.getCompiler().getNocacheMaxAge().getSeconds(), generatedResources, nativeImageResources));
+        return new FeatureBuildItem(FEATURE);
+    }
+
+    private static void compile(final GwtConfiguration config, final CompilerOptionsImpl options, final ClassLoader classLoader, final List<ModuleGraphResolver.ResolvedModule> modules, final Path projectDir, final Path tmpDir, final List<Path> sourceDirectories, final Path sourcesDir, final Path rootPath) {
+        extractSources(config, classLoader, modules, projectDir, tmpDir, sourcesDir);
+
+        final List<File> sourcePath = new LinkedList<>();
+        sourceDirectories.forEach(directory -> sourcePath.add(directory.toFile()));
+        sourcePath.add(sourcesDir.toFile());
+        sourcePath.add(rootPath.toFile());
+
+        final QuarkusTreeLogger treeLogger = new QuarkusTreeLogger(LOGGER);
+        treeLogger.setMaxDetail(TreeLogger.INFO);
+        // module sources come from the source path first and everything else from the class path
+        final ResourceLoader resources = ResourceLoaders.forPathAndFallback(sourcePath, ResourceLoaders.fromContextClassLoader());
+        // permutations are compiled on threads of the build, the worker processes gwt forks by default do not get
+        // its class path and fail before gwt falls back to compiling one permutation at a time
+        final String previousFactory = System.setProperty(PermutationWorkerFactory.FACTORY_IMPL_PROPERTY, ThreadedPermutationWorkerFactory.class.getName());
+        final String previousMaxThreads = System.setProperty(ThreadedPermutationWorkerFactory.MAX_THREADS_PROPERTY, String.valueOf(options.getLocalWorkers()));
+        try {
+            compileModules(config, options, treeLogger, resources);
+        } finally {
+            restoreProperty(PermutationWorkerFactory.FACTORY_IMPL_PROPERTY, previousFactory);
+            restoreProperty(ThreadedPermutationWorkerFactory.MAX_THREADS_PROPERTY, previousMaxThreads);
+        }
+    }
+
+    private static void compileModules(final GwtConfiguration config, final CompilerOptionsImpl options, final QuarkusTreeLogger treeLogger, final ResourceLoader resources) {
+        for (final String module : config.getModules()) {
+            LOGGER.infof("Compiling GWT module %s with %d local workers", module, options.getLocalWorkers());
+            final long start = System.currentTimeMillis();
+            try {
+                options.setModuleNames(Collections.singletonList(module));
+                final ModuleDef moduleDef = ModuleDefLoader.loadFromResources(treeLogger, module, resources, true);
+                if (!Compiler.compile(treeLogger, options, new MinimalRebuildCache(), moduleDef)) {
+                    throw new RuntimeException(String.format("GWT compile of module '%s' failed", module));
+                }
+            } catch (UnableToCompleteException e) {
+                throw new RuntimeException(String.format("GWT compile of module '%s' failed", module), e);
+            }
+            LOGGER.infof("Compiled GWT module %s in %dms", module, System.currentTimeMillis() - start);
+        }
+    }
+
+    private static void restoreProperty(final String key, final String value) {
+        if (value == null) {
+            System.clearProperty(key);
+        } else {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * @return the fingerprint of everything the compile reads, or null if that cannot be known
+     */
+    private static String fingerprint(final GwtConfiguration config, final CompilerOptionsImpl options, final ClassLoader classLoader, final List<ModuleGraphResolver.ResolvedModule> modules, final Path rootPath, final List<Path> sourceDirectories) {
+        final long start = System.currentTimeMillis();
+        final List<Path> sourcePath = new LinkedList<>(sourceDirectories);
+        sourcePath.add(rootPath);
+        // the compiler itself, its bridge sources may have been copied out of the jar already
+        final URL compilerClass = classLoader.getResource(Compiler.class.getName().replace('.', '/') + ".class");
+        if (compilerClass == null) {
+            return null;
+        }
+        try {
+            final String fingerprint = new CompileFingerprint()
+                .option("gwt", About.getGwtVersionNum())
+                .option("modules", String.join(",", config.getModules()))
+                .option("style", options.getOutput().name())
+                .option("optimize", String.valueOf(options.getOptimizationLevel()))
+                .option("sourceLevel", options.getSourceLevel().name())
+                .jarOf(compilerClass)
+                .modules(modules, rootPath, sourcePath)
+                .finish();
+            LOGGER.debugf("Fingerprinted GWT compile inputs in %dms", System.currentTimeMillis() - start);
+            return fingerprint;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warnf("Could not fingerprint GWT compile inputs, compiling: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Keeps the output of a compile, it is copied in under another name first so that a build that stops half way
+     * does not leave output that looks complete.
+     */
+    private static void store(final Path warDir, final Path cachedOutput) {
+        final Path temporary = cachedOutput.resolveSibling("tmp-" + cachedOutput.getFileName());
+        try {
+            delete(temporary);
+            copy(warDir, temporary);
+            Files.move(temporary, cachedOutput, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warnf("Could not keep GWT compile output in '%s': %s", cachedOutput, e.getMessage());
+        }
+    }
+
+    private static void enforceCacheBudget(final Path outputCacheDir, final Path cachedOutput, final long maxBytes) {
+        try {
+            final CacheBudget.Result result = CacheBudget.enforce(outputCacheDir, OUTPUT_CACHE_PREFIX + "*", cachedOutput, maxBytes);
+            LOGGER.debugf("GWT compile output cache %s (%s)", cachedOutput, result);
+        } catch (IOException e) {
+            LOGGER.debugf("Could not check the size of '%s': %s", outputCacheDir, e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the regular files of one directory into another, leaving out the marker of the cache budget.
+     */
+    private static void copy(final Path from, final Path to) throws IOException {
+        final List<Path> files;
+        try (final Stream<Path> stream = Files.walk(from)) {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (final Path file : files) {
+            final Path relative = from.relativize(file);
+            if (CacheBudget.LAST_USED.equals(relative.toString())) {
+                continue;
+            }
+            final Path target = to.resolve(relative.toString());
+            Files.createDirectories(target.getParent());
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @BuildStep(onlyIf = IsNormal.class)
+    @Record(ExecutionTime.RUNTIME_INIT)
+    public void serveCompiledOutput(Optional<CompiledOutputBuildItem> compiledOutput, CompiledOutputRecorder recorder, BuildProducer<RouteBuildItem> routes) {
+        if (compiledOutput.isEmpty()) {
+            return;
+        }
+        final Handler<RoutingContext> handler = recorder.createCompiledOutputHandler();
+        for (final String outputDirectory : compiledOutput.get().getOutputDirectories()) {
+            routes.produce(RouteBuildItem.builder()
+                .route(String.format("/%s/*", outputDirectory))
+                .handler(handler)
+                .build());
+        }
+    }
+
+    /**
+     * Extracts the sources of the gwt-dev jar and of every module that comes from a jar into the given directory.
+     * The compiler only scans directories (and the class path of the build, which is not that of the application)
+     * for sources, so they have to be on disk the same way they are for the code server.
+     */
+    private static void extractSources(final GwtConfiguration config, final ClassLoader classLoader, final List<ModuleGraphResolver.ResolvedModule> modules, final Path projectDir, final Path tmpDir, final Path sourcesDir) {
+        final long start = System.nanoTime();
+        final JarFileSystems jarFileSystems = new JarFileSystems();
+        final ExtractionPipeline extractionPipeline = new ExtractionPipeline(new ExtractionCache(config.getExtractCacheDir()
+            .map(projectDir::resolve)
+            .orElse(tmpDir.resolve("extract-cache"))
+            .normalize(), jarFileSystems));
+        try {
+            final URL bridge = classLoader.getResource(CodeServer.GWT_BRIDGE);
+            if (bridge == null) {
+                throw new RuntimeException(String.format("Could not compile GWT modules because gwt-dev jar could not be found on classpath / %s could not be resolved as a resource", CodeServer.GWT_BRIDGE));
+            }
+            new JarExtractor(extractionPipeline, jarFileSystems).extract(bridge, sourcesDir);
+
+            for (final ModuleGraphResolver.ResolvedModule module : modules) {
+                final URI xmlUri;
+                Path xmlPath;
+                try {
+                    xmlUri = module.getXmlResource().toURI();
+                    xmlPath = "file".equals(xmlUri.getScheme()) ? Paths.get(xmlUri) : null;
+                } catch (URISyntaxException uex) {
+                    throw new RuntimeException(uex);
+                } catch (FileSystemNotFoundException fsne) {
+                    continue;
+                }
+                if (xmlPath != null) {
+                    // already on disk and on the source path
+                    continue;
+                }
+                final SimpleGwtModuleXml model = module.getModel();
+                final List<GwtPathElement> paths = new LinkedList<>();
+                paths.addAll(model.getSuperSources());
+                paths.addAll(model.getSources());
+                paths.addAll(model.getPublicResources());
+                paths.addAll(model.getStylesheets());
+                final ModuleExtractor resourceExtractor = new ModuleExtractor(null, xmlUri, sourcesDir, false, extractionPipeline, jarFileSystems);
+                paths.stream().map(GwtPathElement::getPath).forEach(resourceExtractor);
+            }
+
+            extractionPipeline.run();
+        } finally {
+            jarFileSystems.close();
+        }
+        LOGGER.debugf("Extracted GWT module sources to %s in %dms", sourcesDir, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Packages everything in the war directory, other than what is only meant for the server, with a gzip variant
+     * of each file that compresses and an index of all of it.
+     *
+     * @return the output that was packaged
+     */
+    private static CompiledOutputBuildItem publish(final Path warDir, final long nocacheMaxAge, final BuildProducer<GeneratedResourceBuildItem> generatedResources, final BuildProducer<NativeImageResourceBuildItem> nativeImageResources) {
+        final List<Path> files;
+        try (final Stream<Path> stream = Files.walk(warDir)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not read GWT compile output in '%s'", warDir), e);
+        }
+        final long start = System.currentTimeMillis();
+        final List<CompiledOutputIndex.Entry> entries = new LinkedList<>();
+        final List<String> resources = new LinkedList<>();
+        final Set<String> outputDirectories = new LinkedHashSet<>();
+        long bytes = 0;
+        for (final Path file : files) {
+            final String relative = warDir.relativize(file).toString().replace(File.separatorChar, '/');
+            if (relative.startsWith(WEB_INF) || relative.indexOf('/') < 0) {
+                continue;
+            }
+            final String path = "/" + relative;
+            final byte[] body;
+            try {
+                body = Files.readAllBytes(file);
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Could not read GWT compile output '%s'", file), e);
+            }
+            final byte[] compressedBody = Gzip.isCompressible(path) ? Gzip.compress(body) : null;
+            final CompiledOutputIndex.Entry entry = CompiledOutputIndex.entry(path, body, compressedBody != null && compressedBody.length < body.length ? compressedBody : null, nocacheMaxAge);
+            generatedResources.produce(new GeneratedResourceBuildItem(entry.getResource(), body));
+            resources.add(entry.getResource());
+            bytes += body.length;
+            if (entry.getCompressedLength() >= 0) {
+                generatedResources.produce(new GeneratedResourceBuildItem(entry.getCompressedResource(), compressedBody));
+                resources.add(entry.getCompressedResource());
+            }
+            entries.add(entry);
+            outputDirectories.add(relative.substring(0, relative.indexOf('/')));
+        }
+
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try {
+            CompiledOutputIndex.write(index, entries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        generatedResources.produce(new GeneratedResourceBuildItem(CompiledOutputIndex.INDEX_RESOURCE, index.toByteArray()));
+        resources.add(CompiledOutputIndex.INDEX_RESOURCE);
+        nativeImageResources.produce(new NativeImageResourceBuildItem(resources));
+
+        LOGGER.debugf("Packaged %d compiled GWT files (%d KB) in %dms", entries.size(), bytes / 1024, System.currentTimeMillis() - start);
+        return new CompiledOutputBuildItem(new LinkedList<>(outputDirectories));
+    }
+
+    private static void delete(final Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (final Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
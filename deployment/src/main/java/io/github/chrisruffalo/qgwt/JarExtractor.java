@@ -6,26 +6,32 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.FileSystem;
 import java.nio.file.FileSystemNotFoundException;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.stream.Stream;
 
 public class JarExtractor extends Extractor {
 
     private static final Logger LOGGER = Logger.getLogger(ModuleExtractor.class);
 
+    public JarExtractor() {
+        super();
+    }
+
+    public JarExtractor(final ExtractionPipeline pipeline, final JarFileSystems fileSystems) {
+        super(pipeline, fileSystems);
+    }
+
     public void extract(final URL resourceInJar, final Path targetRoot) {
         // attempt to resolve in filesystem
         Path resourcePath;
         URI resourceUri = null;
         try {
             resourceUri = resourceInJar.toURI();
-            resourcePath = Paths.get(resourceUri);
+            // only files count as being on disk, a jar uri also resolves while its file system is open
+            resourcePath = "file".equals(resourceUri.getScheme()) ? Paths.get(resourceUri) : null;
         } catch (URISyntaxException uex) {
             throw new RuntimeException(uex);
         } catch (FileSystemNotFoundException fsne) {
@@ -45,10 +51,17 @@ public class JarExtractor extends Extractor {
 
         final String[] split = resourceUri.toString().split("!");
 
+        // unpack once, along with everything else, and reuse that for every start after
+        final Path jar = cacheableJar(split[0].substring("jar:".length()));
+        if (jar != null) {
+            this.pipeline.add(jar, "/", targetRoot);
+            return;
+        }
+
         // load jar filesystem
-        try (final FileSystem fs = FileSystems.newFileSystem(new URI(split[0]), new HashMap<>())) {
+        try (final JarFileSystems.Handle handle = openJar(new URI(split[0]))) {
             LOGGER.debugf("Extracting source path zip: %s to target %s", split[0], targetRoot);
-            try (Stream<Path> stream = Files.walk(fs.getPath("/"))) {
+            try (Stream<Path> stream = Files.walk(handle.getFileSystem().getPath("/"))) {
                 processStreamToDirectory(split[0], stream, targetRoot);
             }
         } catch (URISyntaxException | IOException ex) {
@@ -0,0 +1,142 @@
+package io.github.chrisruffalo.qgwt;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares zip file systems for jars between everything that reads from them during a build step so that the
+ * central directory of each jar is only read once. File systems are reference counted and kept open, even when
+ * nothing is using them, until the registry is closed.
+ *
+ * File systems that were already open when they were asked for (for example by Quarkus itself) are used but
+ * never closed.
+ */
+public class JarFileSystems implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(JarFileSystems.class);
+
+    private static final class Holder {
+
+        private final URI uri;
+
+        private final FileSystem fileSystem;
+
+        private final boolean owned;
+
+        private int references = 0;
+
+        private Holder(final URI uri, final FileSystem fileSystem, final boolean owned) {
+            this.uri = uri;
+            this.fileSystem = fileSystem;
+            this.owned = owned;
+        }
+    }
+
+    /**
+     * A reference to an open jar file system, closing it gives the reference back.
+     */
+    public final class Handle implements AutoCloseable {
+
+        private final Holder holder;
+
+        private boolean released = false;
+
+        private Handle(final Holder holder) {
+            this.holder = holder;
+        }
+
+        public FileSystem getFileSystem() {
+            return holder.fileSystem;
+        }
+
+        @Override
+        public void close() {
+            synchronized (JarFileSystems.this) {
+                if (!this.released) {
+                    this.released = true;
+                    release(this.holder);
+                }
+            }
+        }
+    }
+
+    private final Map<URI, Holder> open = new HashMap<>();
+
+    private boolean closed = false;
+
+    /**
+     * @param jar the jar file on disk
+     * @return a handle to the file system for the jar
+     */
+    public Handle open(final Path jar) throws IOException {
+        return open(URI.create("jar:" + jar.toUri()));
+    }
+
+    /**
+     * @param jarUri the uri of the jar itself, as in 'jar:file:/path/to/some.jar'
+     * @return a handle to the file system for the jar
+     */
+    public synchronized Handle open(final URI jarUri) throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("Jar file systems have already been closed");
+        }
+        Holder holder = this.open.get(jarUri);
+        if (holder == null) {
+            try {
+                holder = new Holder(jarUri, FileSystems.newFileSystem(jarUri, new HashMap<>()), true);
+            } catch (FileSystemAlreadyExistsException ex) {
+                holder = new Holder(jarUri, FileSystems.getFileSystem(jarUri), false);
+            }
+            this.open.put(jarUri, holder);
+        }
+        holder.references++;
+        return new Handle(holder);
+    }
+
+    private void release(final Holder holder) {
+        holder.references--;
+        if (this.closed && holder.references <= 0) {
+            this.open.remove(holder.uri);
+            closeFileSystem(holder);
+        }
+    }
+
+    /**
+     * Closes every file system that is no longer referenced, the rest are closed when their last handle is.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        final List<Holder> unreferenced = new ArrayList<>();
+        for (final Holder holder : this.open.values()) {
+            if (holder.references <= 0) {
+                unreferenced.add(holder);
+            }
+        }
+        for (final Holder holder : unreferenced) {
+            this.open.remove(holder.uri);
+            closeFileSystem(holder);
+        }
+    }
+
+    private static void closeFileSystem(final Holder holder) {
+        if (!holder.owned) {
+            return;
+        }
+        try {
+            holder.fileSystem.close();
+        } catch (IOException e) {
+            LOGGER.debugf("Could not close jar file system %s: %s", holder.uri, e.getMessage());
+        }
+    }
+}
@@ -6,12 +6,10 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -31,7 +29,14 @@ public class ModuleExtractor extends Extractor implements Consumer<String> {
 
     final boolean liveReload;
 
+    private boolean xmlExtracted = false;
+
     public ModuleExtractor(final Path resolvedSource, final URI resolvedXml, final Path targetRoot, final boolean liveReload) {
+        this(resolvedSource, resolvedXml, targetRoot, liveReload, null, null);
+    }
+
+    public ModuleExtractor(final Path resolvedSource, final URI resolvedXml, final Path targetRoot, final boolean liveReload, final ExtractionPipeline pipeline, final JarFileSystems fileSystems) {
+        super(pipeline, fileSystems);
         this.resolvedSource = resolvedSource;
         this.resolvedXml = resolvedXml;
         this.targetRoot = targetRoot;
@@ -55,11 +60,29 @@ public class ModuleExtractor extends Extractor implements Consumer<String> {
                 return;
             }
 
+            // unpack once, along with everything else, and reuse that for every start after
+            final Path jar = cacheableJar(split[0].substring("jar:".length()));
+            if (jar != null) {
+                try {
+                    final String moduleDirectory = split[1].substring(0, split[1].lastIndexOf('/') + 1);
+                    this.pipeline.add(jar, split[1], targetRoot);
+                    this.pipeline.add(jar, new URI(null, null, moduleDirectory + path, null).normalize().getPath(), targetRoot);
+                    return;
+                } catch (URISyntaxException ex) {
+                    LOGGER.warnf("Could not resolve '%s' in %s, extracting directly: %s", path, jar, ex.getMessage());
+                }
+            }
+
             // load jar filesystem
-            try (final FileSystem fs = FileSystems.newFileSystem(new URI(split[0]), new HashMap<>())) {
-                final Path targetXml = Paths.get(targetRoot.toString(), split[1].substring(1));
-                Files.createDirectories(targetXml.getParent());
-                Files.copy(fs.getPath(split[1]), targetXml, StandardCopyOption.REPLACE_EXISTING);
+            try (final JarFileSystems.Handle handle = openJar(new URI(split[0]))) {
+                final FileSystem fs = handle.getFileSystem();
+                // the module xml only needs to be copied once no matter how many paths it has
+                if (!this.xmlExtracted) {
+                    final Path targetXml = Paths.get(targetRoot.toString(), split[1].substring(1));
+                    Files.createDirectories(targetXml.getParent());
+                    Files.copy(fs.getPath(split[1]), targetXml, StandardCopyOption.REPLACE_EXISTING);
+                    this.xmlExtracted = true;
+                }
 
                 final Path root = fs.getPath(split[1]);
                 final Path resolved = root.resolveSibling(path);
@@ -0,0 +1,215 @@
+package io.github.chrisruffalo.qgwt;
+
+import org.jboss.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * A compact, binary record of the resolved module graph and the source roots and descriptors in it, with the
+ * configured modules that own each of them, kept in the temporary directory so that a later start can skip
+ * resolving the modules and extracting their resources altogether.
+ *
+ * The index is only used if everything it was built from is unchanged: the configured modules, the target
+ * directory resources were extracted to and, for every module descriptor (and the gwt-dev jar), the location it is
+ * found at on the class path and the size and modification time of the file or jar it is read from. A target
+ * directory that is deleted and created again can get the identity of the old one back, so one of the files that
+ * was extracted into it must also still be there.
+ */
+public final class ModuleGraphIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(ModuleGraphIndex.class);
+
+    private static final int MAGIC = 0x51475749;
+
+    private static final int VERSION = 4;
+
+    private final List<String> modules;
+
+    private final SourceRootIndex sourceRoots;
+
+    private ModuleGraphIndex(final List<String> modules, final SourceRootIndex sourceRoots) {
+        this.modules = modules;
+        this.sourceRoots = sourceRoots;
+    }
+
+    /**
+     * @return the names of every module in the graph, in the order they were resolved
+     */
+    public List<String> getModules() {
+        return modules;
+    }
+
+    /**
+     * @return the source roots on disk that were found in the module graph
+     */
+    public SourceRootIndex getSourceRoots() {
+        return sourceRoots;
+    }
+
+    /**
+     * Reads the index and checks that it still describes the current build.
+     *
+     * @param indexFile the index
+     * @param configuredModules the modules that are configured for this build
+     * @param targetRoot the directory resources are extracted to
+     * @param classLoader the class loader the modules are resolved with
+     * @return the index, or null if it does not exist or is out of date
+     */
+    public static ModuleGraphIndex load(final Path indexFile, final List<String> configuredModules, final Path targetRoot, final ClassLoader classLoader) {
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (!ExtractionCache.identity(targetRoot).equals(in.readUTF())) {
+                LOGGER.debugf("Module graph index is out of date, %s has been recreated", targetRoot);
+                return null;
+            }
+            final String sentinel = in.readUTF();
+            if (!sentinel.isEmpty() && !Files.isRegularFile(targetRoot.resolve(sentinel))) {
+                LOGGER.debugf("Module graph index is out of date, %s is gone from %s", sentinel, targetRoot);
+                return null;
+            }
+            if (!configuredModules.equals(readStrings(in))) {
+                LOGGER.debug("Module graph index is out of date, the configured modules have changed");
+                return null;
+            }
+            final int resources = in.readInt();
+            for (int i = 0; i < resources; i++) {
+                final String location = in.readUTF();
+                final String url = in.readUTF();
+                final String fingerprint = in.readUTF();
+                final URL current = classLoader.getResource(location);
+                if (current == null || !url.equals(current.toString()) || !fingerprint.equals(ModuleGraphResolver.fingerprint(current))) {
+                    LOGGER.debugf("Module graph index is out of date, %s has changed", location);
+                    return null;
+                }
+            }
+            final List<String> modules = readStrings(in);
+            final SourceRootIndex sourceRoots = new SourceRootIndex(targetRoot);
+            final int sourceRootCount = in.readInt();
+            for (int i = 0; i < sourceRootCount; i++) {
+                final Path sourceRoot = Paths.get(in.readUTF());
+                sourceRoots.add(sourceRoot, readStrings(in));
+            }
+            final int descriptorCount = in.readInt();
+            for (int i = 0; i < descriptorCount; i++) {
+                final Path descriptor = Paths.get(in.readUTF());
+                sourceRoots.addDescriptor(descriptor, readStrings(in));
+            }
+            return new ModuleGraphIndex(Collections.unmodifiableList(modules), sourceRoots);
+        } catch (IOException ex) {
+            LOGGER.debugf("Could not read module graph index %s: %s", indexFile, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records the module graph. Nothing is written if any of the resources cannot be fingerprinted since the index
+     * could not be checked later.
+     *
+     * @param indexFile the index
+     * @param configuredModules the modules that are configured for this build
+     * @param targetRoot the directory resources were extracted to
+     * @param classLoader the class loader the modules were resolved with
+     * @param resources the class path locations of everything the graph was built from
+     * @param modules the names of every module in the graph
+     * @param sourceRoots the source roots on disk that were found in the module graph
+     */
+    public static void write(final Path indexFile, final List<String> configuredModules, final Path targetRoot, final ClassLoader classLoader,
+                             final Collection<String> resources, final List<String> modules, final SourceRootIndex sourceRoots) {
+        final Path temporary = indexFile.resolveSibling(indexFile.getFileName().toString() + ".tmp");
+        try {
+            Files.createDirectories(indexFile.getParent());
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(ExtractionCache.identity(targetRoot));
+                out.writeUTF(sentinel(targetRoot, sourceRoots));
+                writeStrings(out, configuredModules);
+                out.writeInt(resources.size());
+                for (final String location : resources) {
+                    final URL current = classLoader.getResource(location);
+                    final String fingerprint = current != null ? ModuleGraphResolver.fingerprint(current) : null;
+                    if (fingerprint == null) {
+                        LOGGER.debugf("Not writing module graph index, %s cannot be fingerprinted", location);
+                        out.close();
+                        Files.deleteIfExists(temporary);
+                        return;
+                    }
+                    out.writeUTF(location);
+                    out.writeUTF(current.toString());
+                    out.writeUTF(fingerprint);
+                }
+                writeStrings(out, modules);
+                out.writeInt(sourceRoots.getSourceRoots().size());
+                for (final Map.Entry<Path, Set<String>> sourceRoot : sourceRoots.getSourceRoots().entrySet()) {
+                    out.writeUTF(sourceRoot.getKey().toString());
+                    writeStrings(out, new ArrayList<>(sourceRoot.getValue()));
+                }
+                out.writeInt(sourceRoots.getDescriptors().size());
+                for (final Map.Entry<Path, Set<String>> descriptor : sourceRoots.getDescriptors().entrySet()) {
+                    out.writeUTF(descriptor.getKey().toString());
+                    writeStrings(out, new ArrayList<>(descriptor.getValue()));
+                }
+            }
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOGGER.warnf("Could not write module graph index %s: %s", indexFile, ex.getMessage());
+        }
+    }
+
+    /**
+     * @return a file under one of the source roots in the target directory, relative to it, or an empty string if
+     *         there is none
+     */
+    private static String sentinel(final Path targetRoot, final SourceRootIndex sourceRoots) throws IOException {
+        for (final Path sourceRoot : sourceRoots.getSourceRoots().keySet()) {
+            if (!sourceRoot.startsWith(targetRoot) || !Files.isDirectory(sourceRoot)) {
+                continue;
+            }
+            try (final Stream<Path> stream = Files.walk(sourceRoot)) {
+                final Optional<Path> file = stream.filter(Files::isRegularFile).findFirst();
+                if (file.isPresent()) {
+                    return targetRoot.relativize(file.get()).toString();
+                }
+            }
+        }
+        return "";
+    }
+
+    private static List<String> readStrings(final DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(final DataOutputStream out, final List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (final String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package io.github.chrisruffalo.qgwt;
+
+import io.github.chrisruffalo.qgwt.model.GwtInherits;
+import io.github.chrisruffalo.qgwt.model.SimpleGwtModuleXml;
+import org.jboss.logging.Logger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the full graph of GWT modules starting from the configured modules and following 'inherits'. Each level
+ * of the graph is parsed in parallel and the result is in the same (breadth first) order the modules would be found
+ * in by walking the graph one module at a time.
+ *
+ * Parsed module descriptors are kept for the life of the class loader, keyed by their location and the size and
+ * modification time of the file (or jar) they come from, so a live reload only parses what actually changed.
+ */
+public class ModuleGraphResolver {
+
+    private static final Logger LOGGER = Logger.getLogger(ModuleGraphResolver.class);
+
+    private static final int MAX_THREADS = 8;
+
+    /**
+     * A module in the graph with the descriptor that defines it.
+     */
+    public static final class ResolvedModule {
+
+        private final String name;
+
+        private final URL xmlResource;
+
+        private final SimpleGwtModuleXml model;
+
+        private ResolvedModule(final String name, final URL xmlResource, final SimpleGwtModuleXml model) {
+            this.name = name;
+            this.xmlResource = xmlResource;
+            this.model = model;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public URL getXmlResource() {
+            return xmlResource;
+        }
+
+        public SimpleGwtModuleXml getModel() {
+            return model;
+        }
+    }
+
+    private static final class Parsed {
+
+        private final String stamp;
+
+        private final SimpleGwtModuleXml model;
+
+        private Parsed(final String stamp, final SimpleGwtModuleXml model) {
+            this.stamp = stamp;
+            this.model = model;
+        }
+    }
+
+    private static final Map<String, Parsed> PARSED = new ConcurrentHashMap<>();
+
+    private static volatile JAXBContext context;
+
+    private final ClassLoader classLoader;
+
+    public ModuleGraphResolver(final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @param module the name of a module, as in 'com.google.gwt.user.User'
+     * @return the location of the module descriptor relative to the class path
+     */
+    public static String moduleXmlLocation(final String module) {
+        return String.format("%s.gwt.xml", module.replace(".", "/"));
+    }
+
+    /**
+     * @param module the name of a module
+     * @return the module or null if its descriptor could not be found
+     */
+    public ResolvedModule resolve(final String module) {
+        final String xmlResourceLocation = moduleXmlLocation(module);
+        final URL xmlResource = this.classLoader.getResource(xmlResourceLocation);
+        if (xmlResource == null) {
+            LOGGER.warnf("Could not find '%s' for module '%s'", xmlResourceLocation, module);
+            return null;
+        }
+        return new ResolvedModule(module, xmlResource, read(xmlResource));
+    }
+
+    /**
+     * Resolves the given modules and everything they inherit. Modules that cannot be found are logged and left out.
+     *
+     * @param modules the starting modules
+     * @return every module in the graph, each only once
+     */
+    public List<ResolvedModule> resolveAll(final Collection<String> modules) {
+        final long start = System.nanoTime();
+        final List<ResolvedModule> resolved = new ArrayList<>();
+        final Set<String> guard = new HashSet<>(modules);
+        List<String> level = new ArrayList<>(new LinkedHashSet<>(modules));
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())), runnable -> {
+            final Thread thread = new Thread(runnable, "qgwt-modules-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (!level.isEmpty()) {
+                final List<Future<ResolvedModule>> parsing = new ArrayList<>(level.size());
+                for (final String module : level) {
+                    parsing.add(executor.submit(() -> resolve(module)));
+                }
+                final List<String> next = new ArrayList<>();
+                for (final Future<ResolvedModule> future : parsing) {
+                    final ResolvedModule module = future.get();
+                    if (module == null) {
+                        continue;
+                    }
+                    resolved.add(module);
+                    for (final GwtInherits inherits : module.getModel().getInherits()) {
+                        if (guard.add(inherits.getName())) {
+                            next.add(inherits.getName());
+                        }
+                    }
+                }
+                level = next;
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while resolving modules", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.debugf("Resolved %d modules in %dms", resolved.size(), (System.nanoTime() - start) / 1_000_000);
+        return Collections.unmodifiableList(resolved);
+    }
+
+    /**
+     * Works out which of the starting modules inherit each module in the graph, directly or through other modules.
+     *
+     * @param modules the resolved graph
+     * @param roots the starting modules
+     * @return the starting modules that inherit each module, keyed by module name
+     */
+    public static Map<String, Set<String>> inheritedBy(final List<ResolvedModule> modules, final Collection<String> roots) {
+        final Map<String, ResolvedModule> byName = new HashMap<>();
+        for (final ResolvedModule module : modules) {
+            byName.put(module.getName(), module);
+        }
+        final Map<String, Set<String>> inheritedBy = new HashMap<>();
+        for (final String root : roots) {
+            final Deque<String> pending = new ArrayDeque<>();
+            final Set<String> seen = new HashSet<>();
+            pending.add(root);
+            seen.add(root);
+            while (!pending.isEmpty()) {
+                final ResolvedModule module = byName.get(pending.poll());
+                if (module == null) {
+                    continue;
+                }
+                inheritedBy.computeIfAbsent(module.getName(), name -> new LinkedHashSet<>()).add(root);
+                for (final GwtInherits inherits : module.getModel().getInherits()) {
+                    if (seen.add(inherits.getName())) {
+                        pending.add(inherits.getName());
+                    }
+                }
+            }
+        }
+        return inheritedBy;
+    }
+
+    /**
+     * Reads a module descriptor, reusing the last result if the file it comes from has not changed.
+     */
+    public static SimpleGwtModuleXml read(final URL xmlResource) {
+        final String key = xmlResource.toString();
+        final String stamp = fingerprint(xmlResource);
+        if (stamp != null) {
+            final Parsed parsed = PARSED.get(key);
+            if (parsed != null && parsed.stamp.equals(stamp)) {
+                return parsed.model;
+            }
+        }
+        final SimpleGwtModuleXml model;
+        try {
+            model = (SimpleGwtModuleXml) context().createUnmarshaller().unmarshal(xmlResource);
+        } catch (JAXBException e) {
+            throw new RuntimeException(e);
+        }
+        if (stamp != null) {
+            PARSED.put(key, new Parsed(stamp, model));
+        }
+        return model;
+    }
+
+    /**
+     * The context is expensive to create and thread safe so it is only created once, unmarshallers are not
+     * thread safe and are created for each read.
+     */
+    private static JAXBContext context() throws JAXBException {
+        JAXBContext current = context;
+        if (current == null) {
+            synchronized (ModuleGraphResolver.class) {
+                current = context;
+                if (current == null) {
+                    current = JAXBContext.newInstance(SimpleGwtModuleXml.class);
+                    context = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return the size and modification time of the file (or jar) the resource is read from, or null if that cannot
+     *         be known
+     */
+    public static String fingerprint(final URL resource) {
+        String location = resource.toString();
+        if (location.startsWith("jar:")) {
+            final int separator = location.indexOf("!/");
+            if (separator < 0) {
+                return null;
+            }
+            location = location.substring("jar:".length(), separator);
+        }
+        if (!location.startsWith("file:")) {
+            return null;
+        }
+        try {
+            final Path file = Paths.get(new URI(location));
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        } catch (URISyntaxException | IOException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
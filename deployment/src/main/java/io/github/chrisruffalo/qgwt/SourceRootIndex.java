@@ -0,0 +1,135 @@
+package io.github.chrisruffalo.qgwt;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps files to the modules whose source roots contain them. Source roots are kept in a trie of their path
+ * segments relative to a base directory so that finding the owners of a file only walks the segments of that file
+ * instead of comparing it against every source root.
+ *
+ * The modules recorded for a source root are the configured (top level) modules that inherit it, which are the
+ * modules that have to be compiled again when something in it changes. Module descriptors are recorded the same
+ * way since they are usually outside of the source roots they declare.
+ */
+public class SourceRootIndex {
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private Set<String> modules;
+    }
+
+    private final Path base;
+
+    private final Node root = new Node();
+
+    private final Map<Path, Set<String>> sourceRoots = new LinkedHashMap<>();
+
+    private final Map<Path, Set<String>> descriptors = new LinkedHashMap<>();
+
+    /**
+     * @param base the directory source roots and files are relative to
+     */
+    public SourceRootIndex(final Path base) {
+        this.base = base;
+    }
+
+    /**
+     * @return the directory source roots and files are relative to
+     */
+    public Path getBase() {
+        return base;
+    }
+
+    /**
+     * Adds a source root, a source root that was already added is given the additional modules.
+     *
+     * @param sourceRoot the absolute source root, source roots outside the base directory are ignored
+     * @param modules the modules that own the source root
+     */
+    public void add(final Path sourceRoot, final Collection<String> modules) {
+        final Path absolute = sourceRoot.normalize().toAbsolutePath();
+        if (!absolute.startsWith(this.base)) {
+            return;
+        }
+        Node node = this.root;
+        for (final Path segment : this.base.relativize(absolute)) {
+            node = node.children.computeIfAbsent(segment.toString(), key -> new Node());
+        }
+        if (node.modules == null) {
+            node.modules = new LinkedHashSet<>();
+        }
+        node.modules.addAll(modules);
+        this.sourceRoots.computeIfAbsent(absolute, key -> new LinkedHashSet<>()).addAll(modules);
+    }
+
+    /**
+     * Adds a module descriptor, a descriptor that was already added is given the additional modules.
+     *
+     * @param descriptor the path of the descriptor relative to the base directory, as in 'com/example/App.gwt.xml'
+     * @param modules the modules that inherit the module the descriptor defines
+     */
+    public void addDescriptor(final Path descriptor, final Collection<String> modules) {
+        this.descriptors.computeIfAbsent(descriptor.normalize(), key -> new LinkedHashSet<>()).addAll(modules);
+    }
+
+    /**
+     * @param relative the path of a file relative to the base directory
+     * @return the modules of every source root that contains the file, or of the descriptor at that path, empty
+     *         if there are none
+     */
+    public Set<String> modulesFor(final Path relative) {
+        Set<String> found = this.descriptors.getOrDefault(relative, Collections.emptySet());
+        Node node = this.root;
+        for (final Path segment : relative) {
+            if (node.modules != null) {
+                found = union(found, node.modules);
+            }
+            node = node.children.get(segment.toString());
+            if (node == null) {
+                return found;
+            }
+        }
+        // a file is not inside itself, only directories above it count
+        return found;
+    }
+
+    /**
+     * @param relative the path of a file relative to the base directory
+     * @return true if the file is inside any source root
+     */
+    public boolean contains(final Path relative) {
+        return !modulesFor(relative).isEmpty();
+    }
+
+    /**
+     * @return every source root and the modules that own it, in the order they were added
+     */
+    public Map<Path, Set<String>> getSourceRoots() {
+        return Collections.unmodifiableMap(sourceRoots);
+    }
+
+    /**
+     * @return every module descriptor and the modules that inherit it, in the order they were added
+     */
+    public Map<Path, Set<String>> getDescriptors() {
+        return Collections.unmodifiableMap(descriptors);
+    }
+
+    private static Set<String> union(final Set<String> found, final Set<String> modules) {
+        if (found.isEmpty()) {
+            return Collections.unmodifiableSet(modules);
+        }
+        final Set<String> union = new LinkedHashSet<>(found);
+        union.addAll(modules);
+        return union;
+    }
+}
@@ -0,0 +1,217 @@
+package io.github.chrisruffalo.qgwt;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the module source roots and descriptors in the source directories the code server compiles from so
+ * that any change to them (not just to classes that Quarkus reloads) can be synced and recompiled. Events that
+ * arrive close together are handed over as one batch of the files that changed.
+ *
+ * Only the part of each source directory that belongs to a module is watched. Source roots are watched with
+ * everything below them, directories holding module descriptors are watched on their own.
+ */
+public class SourceRootWatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SourceRootWatcher.class);
+
+    /**
+     * How long to keep collecting events once one has arrived.
+     */
+    private static final long BATCH_MILLIS = 50;
+
+    private final WatchService watchService;
+
+    /**
+     * Is told about the module sources that have changed.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * @param files the changed module source files (or directories), relative to their source directory
+         * @param lost true if events were lost, anything in the sources may have changed and not just the files
+         */
+        void changed(Set<Path> files, boolean lost);
+    }
+
+    private final Listener listener;
+
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+    private final Set<Path> recursive = ConcurrentHashMap.newKeySet();
+
+    private volatile List<Path> sourceDirectories = Collections.emptyList();
+
+    private volatile SourceRootIndex index;
+
+    /**
+     * @param listener is given the module sources that have changed
+     */
+    public SourceRootWatcher(final Listener listener) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+        final Thread thread = new Thread(this::run, "qgwt-source-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watches the source roots and descriptors of the index in each of the source directories. Calling this again
+     * with a new index starts watching anything that was not watched yet.
+     *
+     * @param sourceDirectories the directories the code server compiles sources from
+     * @param index the source roots and descriptors of the module graph
+     */
+    public synchronized void watch(final List<Path> sourceDirectories, final SourceRootIndex index) {
+        this.sourceDirectories = new ArrayList<>(sourceDirectories);
+        this.index = index;
+        final long start = System.nanoTime();
+        for (final Path sourceDirectory : sourceDirectories) {
+            for (final Path sourceRoot : index.getSourceRoots().keySet()) {
+                final Path directory = sourceDirectory.resolve(index.getBase().relativize(sourceRoot));
+                if (Files.isDirectory(directory) && !this.recursive.contains(directory)) {
+                    registerAll(directory);
+                }
+            }
+            for (final Path descriptor : index.getDescriptors().keySet()) {
+                final Path directory = sourceDirectory.resolve(descriptor).getParent();
+                if (directory != null && Files.isDirectory(directory) && !this.directories.containsValue(directory)) {
+                    register(directory);
+                }
+            }
+        }
+        LOGGER.debugf("Watching %d source directories (%dms)", this.directories.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void registerAll(final Path directory) {
+        try (final Stream<Path> stream = Files.walk(directory)) {
+            stream.filter(Files::isDirectory).forEach(path -> {
+                this.recursive.add(path);
+                register(path);
+            });
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warnf("Could not watch %s for changes: %s", directory, ex.getMessage());
+        }
+    }
+
+    private void register(final Path directory) {
+        try {
+            final WatchKey key = directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            this.directories.put(key, directory);
+        } catch (IOException ex) {
+            LOGGER.warnf("Could not watch %s for changes: %s", directory, ex.getMessage());
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.take();
+                final Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                // keep draining for a moment so that a save touching many files is one batch
+                while (key != null) {
+                    final Path directory = this.directories.get(key);
+                    for (final WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                            continue;
+                        }
+                        if (directory == null) {
+                            continue;
+                        }
+                        final Path file = directory.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && this.recursive.contains(directory) && Files.isDirectory(file)) {
+                            // files can be moved in along with the new directory before it is watched
+                            registerAll(file);
+                            try (final Stream<Path> stream = Files.walk(file)) {
+                                stream.filter(Files::isRegularFile).forEach(changed::add);
+                            } catch (IOException | RuntimeException ex) {
+                                LOGGER.debugf("Could not list new directory %s: %s", file, ex.getMessage());
+                            }
+                        } else {
+                            changed.add(file);
+                        }
+                    }
+                    if (!key.reset()) {
+                        this.directories.remove(key);
+                        this.recursive.remove(directory);
+                    }
+                    key = this.watchService.poll(BATCH_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                dispatch(changed, overflow);
+            }
+        } catch (ClosedWatchServiceException ex) {
+            // closed, nothing more to watch
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(final Set<Path> changed, final boolean overflow) {
+        final SourceRootIndex current = this.index;
+        if (current == null) {
+            return;
+        }
+        final Set<String> affected = new LinkedHashSet<>();
+        final Set<Path> relevant = new LinkedHashSet<>();
+        if (overflow) {
+            LOGGER.debug("Source change events were lost, syncing every module source");
+        }
+        for (final Path file : changed) {
+            final String name = file.getFileName().toString();
+            // editor swap and backup files are not sources
+            if (name.startsWith(".") || name.endsWith("~")) {
+                continue;
+            }
+            for (final Path sourceDirectory : this.sourceDirectories) {
+                if (!file.startsWith(sourceDirectory)) {
+                    continue;
+                }
+                final Path relative = sourceDirectory.relativize(file);
+                final Set<String> owners = current.modulesFor(relative);
+                if (!owners.isEmpty()) {
+                    relevant.add(relative);
+                    affected.addAll(owners);
+                }
+            }
+        }
+        if (affected.isEmpty() && !overflow) {
+            return;
+        }
+        LOGGER.debugf("Changed sources %s belong to modules: %s", relevant, String.join(", ", affected));
+        try {
+            this.listener.changed(relevant, overflow);
+        } catch (RuntimeException ex) {
+            LOGGER.errorf("Could not recompile after source changes: %s", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.watchService.close();
+        } catch (IOException ex) {
+            LOGGER.debugf("Could not close source watcher: %s", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package io.github.chrisruffalo.qgwt;
+
+import com.google.gwt.util.tools.shared.Md5Utils;
+import com.google.gwt.util.tools.shared.StringUtils;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the classes directory in step with the module sources (everything under a module source root and the
+ * module descriptors) in the source directories. A manifest of what was copied, with the size, modification time
+ * and content hash of each file, turns every sync into a diff: files are only hashed when their size or time has
+ * changed, only copied when their content has changed, and files that are gone from the sources are removed.
+ *
+ * When a file is found in more than one source directory the first one wins, the same as for the code server.
+ */
+public class SourceSync {
+
+    private static final Logger LOGGER = Logger.getLogger(SourceSync.class);
+
+    private static final int MAGIC = 0x51475353;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Syncs may come from a build step and from the source watcher at the same time.
+     */
+    private static final Object LOCK = new Object();
+
+    private static final class Record {
+
+        private final long size;
+
+        private final long modified;
+
+        private final String hash;
+
+        private Record(final long size, final long modified, final String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    private final Path manifestFile;
+
+    private final Path targetRoot;
+
+    private final List<Path> sourceDirectories;
+
+    private final SourceRootIndex index;
+
+    /**
+     * @param manifestFile where the manifest is kept
+     * @param targetRoot the classes directory files are copied to
+     * @param sourceDirectories the directories files are copied from, in order of precedence
+     * @param index the source roots and descriptors of the module graph
+     */
+    public SourceSync(final Path manifestFile, final Path targetRoot, final List<Path> sourceDirectories, final SourceRootIndex index) {
+        this.manifestFile = manifestFile;
+        this.targetRoot = targetRoot;
+        this.sourceDirectories = sourceDirectories;
+        this.index = index;
+    }
+
+    /**
+     * Brings the classes directory up to date with the sources.
+     *
+     * @return the (top level) modules that own any file that was copied or removed
+     */
+    public Set<String> sync() {
+        synchronized (LOCK) {
+            final long start = System.nanoTime();
+            final String targetIdentity;
+            try {
+                targetIdentity = ExtractionCache.identity(this.targetRoot);
+            } catch (IOException ex) {
+                LOGGER.warnf("Could not sync sources to %s: %s", this.targetRoot, ex.getMessage());
+                return Collections.emptySet();
+            }
+            final Map<Path, Record> previous = load(targetIdentity);
+            final Map<Path, Path> sources = collect();
+
+            final Map<Path, Record> current = new LinkedHashMap<>();
+            final Set<Path> changed = new LinkedHashSet<>();
+            int hashed = 0;
+            for (final Map.Entry<Path, Path> source : sources.entrySet()) {
+                final Path relative = source.getKey();
+                final Record known = previous.get(relative);
+                try {
+                    final Record record = update(relative, source.getValue(), known, changed);
+                    if (record != known) {
+                        hashed++;
+                    }
+                    current.put(relative, record);
+                } catch (IOException ex) {
+                    LOGGER.errorf("Could not copy changed file %s to target path %s", source.getValue(), this.targetRoot.resolve(relative));
+                }
+            }
+
+            // anything that was copied before and is no longer in the sources goes
+            for (final Path relative : previous.keySet()) {
+                if (!current.containsKey(relative)) {
+                    remove(relative, changed);
+                }
+            }
+
+            if (hashed > 0 || previous.size() != current.size()) {
+                write(targetIdentity, current);
+            }
+            LOGGER.debugf("Synced %d source files to %s, %d hashed and %d changed (%dms)", current.size(), this.targetRoot, hashed, changed.size(), (System.nanoTime() - start) / 1_000_000);
+            return modulesFor(changed);
+        }
+    }
+
+    /**
+     * Brings only the given files up to date, the way {@link #sync()} would, without looking at any other file in
+     * the sources. Falls back to a full sync when there is nothing to compare the files against.
+     *
+     * @param files the files that may have changed, relative to their source directory, a deleted directory
+     *              removes everything that was copied from it
+     * @return the (top level) modules that own any file that was copied or removed
+     */
+    public Set<String> sync(final Collection<Path> files) {
+        synchronized (LOCK) {
+            final long start = System.nanoTime();
+            final String targetIdentity;
+            try {
+                targetIdentity = ExtractionCache.identity(this.targetRoot);
+            } catch (IOException ex) {
+                LOGGER.warnf("Could not sync sources to %s: %s", this.targetRoot, ex.getMessage());
+                return Collections.emptySet();
+            }
+            final Map<Path, Record> previous = load(targetIdentity);
+            if (previous.isEmpty()) {
+                return sync();
+            }
+
+            final Map<Path, Record> current = new LinkedHashMap<>(previous);
+            final Set<Path> changed = new LinkedHashSet<>();
+            int hashed = 0;
+            int removed = 0;
+            for (final Path relative : files) {
+                if (!this.index.contains(relative)) {
+                    continue;
+                }
+                final Path source = locate(relative);
+                if (source == null) {
+                    for (final Path gone : new ArrayList<>(current.keySet())) {
+                        if (gone.startsWith(relative)) {
+                            current.remove(gone);
+                            remove(gone, changed);
+                            removed++;
+                        }
+                    }
+                    continue;
+                }
+                final Record known = current.get(relative);
+                try {
+                    final Record record = update(relative, source, known, changed);
+                    if (record != known) {
+                        hashed++;
+                    }
+                    current.put(relative, record);
+                } catch (IOException ex) {
+                    LOGGER.errorf("Could not copy changed file %s to target path %s", source, this.targetRoot.resolve(relative));
+                }
+            }
+
+            if (hashed > 0 || removed > 0) {
+                write(targetIdentity, current);
+            }
+            LOGGER.debugf("Synced %d changed paths of %d source files to %s, %d hashed and %d changed (%dms)", files.size(), current.size(), this.targetRoot, hashed, changed.size(), (System.nanoTime() - start) / 1_000_000);
+            return modulesFor(changed);
+        }
+    }
+
+    /**
+     * Copies a source file when its content is not what was copied before. The file is only hashed when its
+     * size or modification time is not the one that was recorded.
+     *
+     * @return the known record when the file has not been touched, otherwise a new record with its current hash
+     */
+    private Record update(final Path relative, final Path source, final Record known, final Set<Path> changed) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        final long size = attributes.size();
+        final long modified = attributes.lastModifiedTime().toMillis();
+        if (known != null && known.size == size && known.modified == modified) {
+            return known;
+        }
+        final byte[] content = Files.readAllBytes(source);
+        final String hash = StringUtils.toHexString(Md5Utils.getMd5Digest(content));
+        if (known == null || !known.hash.equals(hash)) {
+            final Path target = this.targetRoot.resolve(relative);
+            Files.createDirectories(target.getParent());
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            changed.add(relative);
+        }
+        return new Record(size, modified, hash);
+    }
+
+    private void remove(final Path relative, final Set<Path> changed) {
+        final Path target = this.targetRoot.resolve(relative);
+        try {
+            if (Files.deleteIfExists(target)) {
+                changed.add(relative);
+            }
+        } catch (IOException ex) {
+            LOGGER.errorf("Could not remove changed file %s", target);
+        }
+    }
+
+    /**
+     * @return the file the given path is copied from, the first source directory that has it wins
+     */
+    private Path locate(final Path relative) {
+        for (final Path sourceDirectory : this.sourceDirectories) {
+            final Path file = sourceDirectory.resolve(relative);
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private Set<String> modulesFor(final Set<Path> changed) {
+        final Set<String> modules = new LinkedHashSet<>();
+        for (final Path relative : changed) {
+            modules.addAll(this.index.modulesFor(relative));
+        }
+        return modules;
+    }
+
+    /**
+     * @return every module source file, relative to its source directory, mapped to the file to copy it from
+     */
+    private Map<Path, Path> collect() {
+        final Map<Path, Path> sources = new LinkedHashMap<>();
+        for (final Path sourceDirectory : this.sourceDirectories) {
+            for (final Path sourceRoot : this.index.getSourceRoots().keySet()) {
+                final Path directory = sourceDirectory.resolve(this.index.getBase().relativize(sourceRoot));
+                if (!Files.isDirectory(directory)) {
+                    continue;
+                }
+                try (final Stream<Path> stream = Files.walk(directory)) {
+                    stream.filter(Files::isRegularFile).forEach(file -> sources.putIfAbsent(sourceDirectory.relativize(file), file));
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.warnf("Could not read source root %s: %s", directory, ex.getMessage());
+                }
+            }
+            for (final Path descriptor : this.index.getDescriptors().keySet()) {
+                final Path file = sourceDirectory.resolve(descriptor);
+                if (Files.isRegularFile(file)) {
+                    sources.putIfAbsent(descriptor, file);
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @return the manifest, empty if there is none or if it was written for a classes directory that has since
+     *         been recreated
+     */
+    private Map<Path, Record> load(final String targetIdentity) {
+        if (!Files.isRegularFile(this.manifestFile)) {
+            return Collections.emptyMap();
+        }
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.manifestFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !targetIdentity.equals(in.readUTF())) {
+                return Collections.emptyMap();
+            }
+            final int count = in.readInt();
+            final Map<Path, Record> records = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                final Path relative = this.targetRoot.getFileSystem().getPath(in.readUTF());
+                records.put(relative, new Record(in.readLong(), in.readLong(), in.readUTF()));
+            }
+            return records;
+        } catch (IOException ex) {
+            LOGGER.debugf("Could not read source manifest %s: %s", this.manifestFile, ex.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    private void write(final String targetIdentity, final Map<Path, Record> records) {
+        final Path temporary = this.manifestFile.resolveSibling(this.manifestFile.getFileName().toString() + ".tmp");
+        try {
+            Files.createDirectories(this.manifestFile.getParent());
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(targetIdentity);
+                out.writeInt(records.size());
+                for (final Map.Entry<Path, Record> record : records.entrySet()) {
+                    out.writeUTF(record.getKey().toString());
+                    out.writeLong(record.getValue().size);
+                    out.writeLong(record.getValue().modified);
+                    out.writeUTF(record.getValue().hash);
+                }
+            }
+            Files.move(temporary, this.manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOGGER.warnf("Could not write source manifest %s: %s", this.manifestFile, ex.getMessage());
+        }
+    }
+}
@@ -2,6 +2,12 @@ package io.github.chrisruffalo.qgwt.configuration;
 
 import io.quarkus.runtime.annotations.ConfigGroup;
 import io.quarkus.runtime.annotations.ConfigItem;
+import io.quarkus.runtime.configuration.MemorySize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 
 @ConfigGroup
 public class CodeServerConfiguration {
@@ -18,6 +24,54 @@ public class CodeServerConfiguration {
     @ConfigItem(name="bind-address", defaultValue = "127.0.0.1")
     String bindAddress;
 
+    /**
+     * How long to wait after a live reload changes module sources before recompiling. Changes that arrive in
+     * the meantime restart the wait and are compiled together.
+     */
+    @ConfigItem(name="recompile-delay", defaultValue = "0.3S")
+    Duration recompileDelay;
+
+    /**
+     * When true, the module source roots and descriptors in the source root and additional source roots are
+     * watched, and any change to them (including resources, ui binder templates, stylesheets and module
+     * descriptors) recompiles the modules they belong to without waiting for a live reload.
+     */
+    @ConfigItem(name="watch-sources", defaultValue = "true")
+    boolean watchSources;
+
+    /**
+     * When true, every module is compiled in the background as soon as the code server has started, instead of
+     * when the page is first loaded. Quarkus does not wait for the compile, the proxy answers
+     * '/gwt-codeserver/ready' with 503 while it runs and with 200 once it is done.
+     */
+    @ConfigItem(name="background-compile", defaultValue = "false")
+    boolean backgroundCompile;
+
+    /**
+     * The binding properties a module is compiled with in the background before any page has loaded it, like
+     * 'quarkus.gwt.code-server.background-bindings."user.agent"=gecko1_8'. Once a page has loaded a module the
+     * bindings it was served with are used instead. Properties that are not set default to 'user.agent=safari'
+     * and 'locale=en', the same as the code server's own precompile.
+     */
+    @ConfigItem(name="background-bindings")
+    Map<String, String> backgroundBindings = new HashMap<>();
+
+    /**
+     * How much disk the GWT unit and minimal rebuild caches in the temporary directory may use together. The cache
+     * is shared by every module of a project and kept across restarts, caches of other projects (or GWT versions)
+     * that were used longest ago are removed at startup until everything fits. Zero or less for no limit.
+     */
+    @ConfigItem(name="cache-max-size", defaultValue = "512M")
+    MemorySize cacheMaxSize;
+
+    /**
+     * When set, GWT log records of the code server are written by a background thread from a buffer of this many
+     * records, so that compiles never wait on console output. When the buffer is full the oldest records are
+     * dropped and a count of them is logged.
+     */
+    @ConfigItem(name="log-buffer-size")
+    Optional<Integer> logBufferSize = Optional.empty();
+
     public int getPort() {
         return port;
     }
@@ -33,4 +87,52 @@ public class CodeServerConfiguration {
     public void setBindAddress(String bindAddress) {
         this.bindAddress = bindAddress;
     }
+
+    public Duration getRecompileDelay() {
+        return recompileDelay;
+    }
+
+    public void setRecompileDelay(Duration recompileDelay) {
+        this.recompileDelay = recompileDelay;
+    }
+
+    public boolean isWatchSources() {
+        return watchSources;
+    }
+
+    public void setWatchSources(boolean watchSources) {
+        this.watchSources = watchSources;
+    }
+
+    public boolean isBackgroundCompile() {
+        return backgroundCompile;
+    }
+
+    public void setBackgroundCompile(boolean backgroundCompile) {
+        this.backgroundCompile = backgroundCompile;
+    }
+
+    public Map<String, String> getBackgroundBindings() {
+        return backgroundBindings;
+    }
+
+    public void setBackgroundBindings(Map<String, String> backgroundBindings) {
+        this.backgroundBindings = backgroundBindings;
+    }
+
+    public MemorySize getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(MemorySize cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public Optional<Integer> getLogBufferSize() {
+        return logBufferSize;
+    }
+
+    public void setLogBufferSize(Optional<Integer> logBufferSize) {
+        this.logBufferSize = logBufferSize;
+    }
 }
@@ -0,0 +1,117 @@
+package io.github.chrisruffalo.qgwt.configuration;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+import io.quarkus.runtime.configuration.MemorySize;
+
+import java.time.Duration;
+import java.util.Optional;
+
+@ConfigGroup
+public class CompilerConfiguration {
+
+    /**
+     * When true, the modules are compiled with the GWT compiler as part of a production build and the output is
+     * packaged with and served by the application.
+     */
+    @ConfigItem(defaultValue = "true")
+    boolean enabled;
+
+    /**
+     * How many permutations are compiled at the same time, each on its own thread of the build. Defaults to the number
+     * of available processors.
+     */
+    @ConfigItem(name="local-workers")
+    Optional<Integer> localWorkers = Optional.empty();
+
+    /**
+     * The style of the generated JavaScript: OBFUSCATED, PRETTY or DETAILED.
+     */
+    @ConfigItem(defaultValue = "OBFUSCATED")
+    String style;
+
+    /**
+     * The optimization level from 0 (none) to 9 (most).
+     */
+    @ConfigItem(defaultValue = "9")
+    int optimize;
+
+    /**
+     * How long browsers may use the '*.nocache.js' selection script of a module without checking for a new one.
+     * Files that GWT names '*.cache.*' are cached for good since their names change with their content.
+     */
+    @ConfigItem(name="nocache-max-age", defaultValue = "30S")
+    Duration nocacheMaxAge;
+
+    /**
+     * Where the output of each compile is kept, by the fingerprint of its inputs (the module graph, the sources
+     * under the module source roots, the jars modules come from and the compiler options). A build with the same
+     * fingerprint uses the kept output instead of compiling again. Defaults to 'compile-cache' inside the
+     * temporary directory. Point this outside of the build directory to keep the cache across clean builds.
+     */
+    @ConfigItem(name="cache-dir")
+    Optional<String> cacheDir = Optional.empty();
+
+    /**
+     * How much disk the kept compile output may use, the output that was used longest ago is removed first. Zero
+     * or less for no limit.
+     */
+    @ConfigItem(name="cache-max-size", defaultValue = "256M")
+    MemorySize cacheMaxSize;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Optional<Integer> getLocalWorkers() {
+        return localWorkers;
+    }
+
+    public void setLocalWorkers(Optional<Integer> localWorkers) {
+        this.localWorkers = localWorkers;
+    }
+
+    public String getStyle() {
+        return style;
+    }
+
+    public void setStyle(String style) {
+        this.style = style;
+    }
+
+    public int getOptimize() {
+        return optimize;
+    }
+
+    public void setOptimize(int optimize) {
+        this.optimize = optimize;
+    }
+
+    public Duration getNocacheMaxAge() {
+        return nocacheMaxAge;
+    }
+
+    public void setNocacheMaxAge(Duration nocacheMaxAge) {
+        this.nocacheMaxAge = nocacheMaxAge;
+    }
+
+    public Optional<String> getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(Optional<String> cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public MemorySize getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(MemorySize cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+}
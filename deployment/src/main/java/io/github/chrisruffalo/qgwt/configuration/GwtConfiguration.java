@@ -47,8 +47,26 @@ public class GwtConfiguration {
     @ConfigItem(name="temp-dir", defaultValue = "target/qgwt")
     String tempDir;
 
+    /**
+     * Where files unpacked from the gwt-dev jar and from module jars are kept so that each jar is only
+     * extracted once. Defaults to 'extract-cache' inside the temporary directory. Point this outside of
+     * the build directory to keep the cache across clean builds.
+     */
+    @ConfigItem(name="extract-cache-dir")
+    Optional<String> extractCacheDir = Optional.empty();
+
     CodeServerConfiguration codeServer;
 
+    /**
+     * Settings for compiling the modules in a production build.
+     */
+    CompilerConfiguration compiler;
+
+    /**
+     * Settings for the proxy that forwards requests from Quarkus to the code server.
+     */
+    ProxyConfiguration proxy;
+
     public List<String> getModules() {
         return modules;
     }
@@ -81,6 +99,14 @@ public class GwtConfiguration {
         this.tempDir = tempDir;
     }
 
+    public Optional<String> getExtractCacheDir() {
+        return extractCacheDir;
+    }
+
+    public void setExtractCacheDir(Optional<String> extractCacheDir) {
+        this.extractCacheDir = extractCacheDir;
+    }
+
     public CodeServerConfiguration getCodeServer() {
         return codeServer;
     }
@@ -89,6 +115,22 @@ public class GwtConfiguration {
         this.codeServer = codeServer;
     }
 
+    public CompilerConfiguration getCompiler() {
+        return compiler;
+    }
+
+    public void setCompiler(CompilerConfiguration compiler) {
+        this.compiler = compiler;
+    }
+
+    public ProxyConfiguration getProxy() {
+        return proxy;
+    }
+
+    public void setProxy(ProxyConfiguration proxy) {
+        this.proxy = proxy;
+    }
+
     public String getSourceRoot() {
         return sourceRoot;
     }
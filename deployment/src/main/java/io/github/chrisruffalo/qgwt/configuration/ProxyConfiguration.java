@@ -0,0 +1,160 @@
+package io.github.chrisruffalo.qgwt.configuration;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+import io.quarkus.runtime.configuration.MemorySize;
+
+import java.time.Duration;
+
+@ConfigGroup
+public class ProxyConfiguration {
+
+    public enum Mode {
+        /**
+         * Proxy with a blocking servlet filter in front of Undertow.
+         */
+        SERVLET,
+        /**
+         * Proxy with a non-blocking Vert.x route that does not hold a worker thread while
+         * waiting on the code server.
+         */
+        REACTIVE
+    }
+
+    /**
+     * How requests are proxied to the code server: 'servlet' registers a filter with Undertow and
+     * 'reactive' registers a non-blocking Vert.x route.
+     */
+    @ConfigItem(defaultValue = "servlet")
+    Mode mode;
+
+    /**
+     * When true, compiled output (permutations, nocache.js, public resources) is served directly from the
+     * code server's output directory instead of being requested from the code server over HTTP. Anything
+     * that has not been compiled yet, and the code server's own endpoints, are still proxied.
+     */
+    @ConfigItem(name="serve-from-disk", defaultValue = "false")
+    boolean serveFromDisk;
+
+    /**
+     * The total size of the code server responses the proxy keeps in memory. Cached responses are answered
+     * without a round trip to the code server, conditional requests are answered with a 304, and everything
+     * is dropped when a compile finishes. Set to 0 to disable the cache.
+     */
+    @ConfigItem(name="cache-size", defaultValue = "32M")
+    MemorySize cacheSize;
+
+    /**
+     * The maximum number of pooled connections the proxy will hold open to the code server.
+     */
+    @ConfigItem(name="max-connections", defaultValue = "50")
+    int maxConnections;
+
+    /**
+     * The maximum number of pooled connections the proxy will hold open per route. Since the
+     * proxy only talks to the code server this is, in practice, the number of concurrent
+     * proxied requests.
+     */
+    @ConfigItem(name="max-connections-per-route", defaultValue = "20")
+    int maxConnectionsPerRoute;
+
+    /**
+     * How long to wait for a connection to the code server to be established.
+     */
+    @ConfigItem(name="connect-timeout", defaultValue = "5S")
+    Duration connectTimeout;
+
+    /**
+     * How long to wait for data from the code server. This needs to be long enough to cover
+     * a full compile since requests to '/recompile' do not return until compilation is complete.
+     */
+    @ConfigItem(name="read-timeout", defaultValue = "10M")
+    Duration readTimeout;
+
+    /**
+     * How long an idle keep-alive connection to the code server is held in the pool before
+     * it is closed.
+     */
+    @ConfigItem(name="keep-alive", defaultValue = "60S")
+    Duration keepAlive;
+
+    /**
+     * The size of the buffer used to stream response bodies from the code server to the
+     * client. Bodies are forwarded one chunk at a time as they arrive so memory use stays
+     * flat regardless of the size of the compiled output.
+     */
+    @ConfigItem(name="chunk-size", defaultValue = "64K")
+    MemorySize chunkSize;
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public boolean isServeFromDisk() {
+        return serveFromDisk;
+    }
+
+    public void setServeFromDisk(boolean serveFromDisk) {
+        this.serveFromDisk = serveFromDisk;
+    }
+
+    public MemorySize getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(MemorySize cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(Duration keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public MemorySize getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(MemorySize chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+}
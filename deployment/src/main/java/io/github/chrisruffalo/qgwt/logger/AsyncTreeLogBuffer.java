@@ -0,0 +1,77 @@
+package io.github.chrisruffalo.qgwt.logger;
+
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded buffer of tree log records that are written to the log by a background thread, so that compile threads
+ * only ever pay for adding a record. When the buffer is full the oldest record is dropped to make room, a count of
+ * dropped records is logged once the writer catches up.
+ */
+public class AsyncTreeLogBuffer {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncTreeLogBuffer.class);
+
+    private final ArrayBlockingQueue<Record> records;
+
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    /**
+     * @param capacity how many records may wait to be written
+     */
+    public AsyncTreeLogBuffer(final int capacity) {
+        this.records = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        final Thread writer = new Thread(this::write, "qgwt-tree-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void offer(final Logger delegate, final Logger.Level level, final int depth, final String msg, final Throwable caught) {
+        final Record record = new Record(delegate, level, depth, msg, caught);
+        while (!this.records.offer(record)) {
+            if (this.records.poll() != null) {
+                this.dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void write() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Record record;
+            try {
+                record = this.records.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            final long droppedRecords = this.dropped.getAndSet(0);
+            if (droppedRecords > 0) {
+                LOGGER.warnf("Dropped %d GWT log records, the log buffer was full", droppedRecords);
+            }
+            try {
+                record.delegate.log(record.level, QuarkusTreeLogger.indent(record.depth) + record.msg, record.caught);
+            } catch (RuntimeException ex) {
+                LOGGER.debugf("Could not write GWT log record: %s", ex.getMessage());
+            }
+        }
+    }
+
+    private static final class Record {
+
+        private final Logger delegate;
+        private final Logger.Level level;
+        private final int depth;
+        private final String msg;
+        private final Throwable caught;
+
+        private Record(final Logger delegate, final Logger.Level level, final int depth, final String msg, final Throwable caught) {
+            this.delegate = delegate;
+            this.level = level;
+            this.depth = depth;
+            this.msg = msg;
+            this.caught = caught;
+        }
+    }
+}
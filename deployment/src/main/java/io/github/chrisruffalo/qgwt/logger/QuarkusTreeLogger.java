@@ -5,37 +5,80 @@ import com.google.gwt.core.ext.TreeLogger;
 import org.jboss.logging.Logger;
 
 /**
- * Adapts the GWT tree logging system to the Quarkus log.
+ * Adapts the GWT tree logging system to the Quarkus log. GWT logs a great deal below the levels that are usually
+ * enabled, so the level is checked before any work is done on a message and the indent for each depth of the tree
+ * is only built once. Records can be handed to an {@link AsyncTreeLogBuffer} so that the threads that log them do
+ * not wait on the console.
  */
 public class QuarkusTreeLogger extends TreeLogger {
 
     private static final String INDENT = "  ";
+
+    private static final String[] INDENTS = new String[32];
+    static {
+        for (int depth = 0; depth < INDENTS.length; depth++) {
+            INDENTS[depth] = Strings.repeat(INDENT, depth);
+        }
+    }
+
     private final Logger delegate;
     private final int level;
 
-    private Type maxType = Type.INFO;
+    /**
+     * The logger at the top of the tree, branches share its max detail.
+     */
+    private final QuarkusTreeLogger root;
+
+    private final AsyncTreeLogBuffer buffer;
+
+    private volatile Type maxType = Type.INFO;
+
+    /**
+     * Branches are stateless apart from their depth so each logger only ever creates one.
+     */
+    private volatile QuarkusTreeLogger child;
 
     public QuarkusTreeLogger(Logger delegate) {
-        this(delegate, 0);
+        this(delegate, null);
     }
 
-    private QuarkusTreeLogger(Logger delegate, int indentLevel) {
+    /**
+     * @param buffer the buffer records are handed to, or null to log them on the calling thread
+     */
+    public QuarkusTreeLogger(Logger delegate, AsyncTreeLogBuffer buffer) {
         this.delegate = delegate;
-        this.level = indentLevel;
+        this.level = 0;
+        this.root = this;
+        this.buffer = buffer;
+    }
+
+    private QuarkusTreeLogger(QuarkusTreeLogger parent) {
+        this.delegate = parent.delegate;
+        this.level = parent.level + 1;
+        this.root = parent.root;
+        this.buffer = parent.buffer;
     }
 
     @Override
     public TreeLogger branch(Type type, String msg, Throwable caught, HelpInfo helpInfo) {
-        return new QuarkusTreeLogger(delegate, level + 1);
+        if (msg != null || caught != null) {
+            log(type, msg, caught, helpInfo);
+        }
+        QuarkusTreeLogger branch = this.child;
+        if (branch == null) {
+            branch = new QuarkusTreeLogger(this);
+            this.child = branch;
+        }
+        return branch;
     }
 
     public void setMaxDetail(Type type) {
         this.delegate.tracef("Max detail for tree logger set to %s", type.name());
-        this.maxType = type;
+        this.root.maxType = type;
     }
 
     private Logger.Level levelConverter(final Type type) {
-        if(type.isLowerPriorityThan(maxType)) {
+        if(type.isLowerPriorityThan(this.root.maxType)) {
             return Logger.Level.TRACE;
         }
         switch (type) {
@@ -62,6 +105,18 @@ public class QuarkusTreeLogger extends TreeLogger {
 
     @Override
     public void log(Type type, String msg, Throwable caught, HelpInfo helpInfo) {
-        this.delegate.log(levelConverter(type), Strings.repeat(INDENT, level) + msg, caught);
+        final Logger.Level converted = levelConverter(type);
+        if (!this.delegate.isEnabled(converted)) {
+            return;
+        }
+        if (this.buffer != null) {
+            this.buffer.offer(this.delegate, converted, this.level, msg, caught);
+        } else {
+            this.delegate.log(converted, indent(this.level) + msg, caught);
+        }
+    }
+
+    static String indent(final int depth) {
+        return depth < INDENTS.length ? INDENTS[depth] : Strings.repeat(INDENT, depth);
     }
 }
@@ -2,6 +2,7 @@ package io.github.chrisruffalo.qgwt.model;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElements;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -12,6 +13,9 @@ import java.util.List;
 @XmlRootElement(name = "module")
 public class SimpleGwtModuleXml {
 
+    @XmlAttribute(name = "rename-to")
+    private String renameTo;
+
     @XmlElement(name = "inherits")
     private List<GwtInherits> inherits = new LinkedList<>();
 
@@ -28,6 +32,14 @@ public class SimpleGwtModuleXml {
     private List<GwtSuperSource> stylesheets = new LinkedList<>();
 
 
+    public String getRenameTo() {
+        return renameTo;
+    }
+
+    public void setRenameTo(String renameTo) {
+        this.renameTo = renameTo;
+    }
+
     public List<GwtInherits> getInherits() {
         return inherits;
     }
@@ -0,0 +1,71 @@
+package io.github.chrisruffalo.qgwt;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+public class CompileFingerprintTest {
+
+    private static final String MODULE = "com.example.App";
+
+    @TempDir
+    Path classes;
+
+    @Test
+    public void defaultSourceAndPublicPathsAreFingerprinted() throws IOException {
+        write(ModuleGraphResolver.moduleXmlLocation(MODULE), "<module>\n  <inherits name=\"com.google.gwt.core.Core\"/>\n</module>\n");
+        write("com/example/client/App.java", "package com.example.client;\npublic class App {}\n");
+        write("com/example/public/app.css", "body {}\n");
+
+        final String original = fingerprint();
+        Assertions.assertNotNull(original);
+        Assertions.assertEquals(original, fingerprint());
+
+        write("com/example/client/App.java", "package com.example.client;\npublic class App { int changed; }\n");
+        final String sourceChanged = fingerprint();
+        Assertions.assertNotEquals(original, sourceChanged);
+
+        write("com/example/public/app.css", "body { margin: 0; }\n");
+        Assertions.assertNotEquals(sourceChanged, fingerprint());
+    }
+
+    @Test
+    public void explicitSourcesReplaceTheDefault() throws IOException {
+        write(ModuleGraphResolver.moduleXmlLocation(MODULE), "<module>\n  <source path=\"shared\"/>\n</module>\n");
+        write("com/example/shared/Dto.java", "package com.example.shared;\npublic class Dto {}\n");
+        write("com/example/client/App.java", "package com.example.client;\npublic class App {}\n");
+
+        final String original = fingerprint();
+        write("com/example/client/App.java", "package com.example.client;\npublic class App { int changed; }\n");
+        Assertions.assertEquals(original, fingerprint());
+
+        write("com/example/shared/Dto.java", "package com.example.shared;\npublic class Dto { int changed; }\n");
+        Assertions.assertNotEquals(original, fingerprint());
+    }
+
+    private String fingerprint() throws IOException {
+        // only the module itself is on this class path, what it inherits is not resolved
+        try (final URLClassLoader classLoader = new URLClassLoader(new URL[]{this.classes.toUri().toURL()}, null)) {
+            final List<ModuleGraphResolver.ResolvedModule> modules = new ModuleGraphResolver(classLoader).resolveAll(Collections.singletonList(MODULE));
+            return new CompileFingerprint()
+                .option("modules", MODULE)
+                .modules(modules, this.classes, Collections.singletonList(this.classes))
+                .finish();
+        }
+    }
+
+    private void write(final String relative, final String content) throws IOException {
+        final Path file = this.classes.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
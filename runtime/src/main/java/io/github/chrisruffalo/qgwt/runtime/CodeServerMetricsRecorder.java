@@ -0,0 +1,42 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import io.quarkus.runtime.annotations.Recorder;
+import io.quarkus.runtime.metrics.MetricsFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Exposes the timings of the code server through whatever metrics system the application uses. Phases timed by the
+ * deployment class loader are read when the metrics are, requests through the proxy go to a timer as they finish.
+ */
+@Recorder
+public class CodeServerMetricsRecorder {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    public Consumer<MetricsFactory> registerTimings() {
+        return metrics -> {
+            for (final CodeServerTimings.Phase phase : CodeServerTimings.Phase.values()) {
+                if (!phase.isShared()) {
+                    final MetricsFactory.TimeRecorder timer = metrics.builder(phase.getMetricName())
+                        .description(phase.getDescription())
+                        .buildTimer();
+                    CodeServerTimings.listen(phase, nanos -> timer.update(nanos, TimeUnit.NANOSECONDS));
+                    continue;
+                }
+                metrics.builder(phase.getMetricName() + ".count")
+                    .description(phase.getDescription() + ", how often")
+                    .buildCounter(phase, p -> CodeServerTimings.stats(p).getCount());
+                metrics.builder(phase.getMetricName() + ".time")
+                    .description(phase.getDescription() + ", total time")
+                    .unit("seconds")
+                    .buildCounter(phase, p -> CodeServerTimings.stats(p).getTotalNanos() / NANOS_PER_SECOND);
+                metrics.builder(phase.getMetricName() + ".max")
+                    .description(phase.getDescription() + ", longest time")
+                    .unit("seconds")
+                    .buildGauge(phase, p -> CodeServerTimings.stats(p).getMaxNanos() / NANOS_PER_SECOND);
+            }
+        };
+    }
+}
@@ -0,0 +1,275 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shares the location of the code server's compiled output with the proxy so that it can be served
+ * straight from disk.
+ *
+ * In dev mode the code server is started by the deployment class loader and the proxy runs in the
+ * application class loader so static state is not shared between them. System properties are JVM-wide
+ * so they are used as the (very small) channel between the two.
+ */
+public final class CodeServerOutputs {
+
+    private static final String WAR_DIR_PROPERTY_PREFIX = "qgwt.codeserver.war.";
+
+    private static final String GENERATION_PROPERTY = "qgwt.codeserver.generation";
+
+    private static final String STATE_PROPERTY = "qgwt.codeserver.state";
+
+    /**
+     * Answered by the proxy with the state of the code server, 200 once it is ready and 503 before that.
+     */
+    public static final String READINESS_PATH = "/gwt-codeserver/ready";
+
+    /**
+     * Where the code server is on its way to serving compiled output.
+     */
+    public enum State {
+        /**
+         * The code server has not been started yet.
+         */
+        STARTING,
+        /**
+         * The code server is up and the modules are being compiled in the background.
+         */
+        COMPILING,
+        /**
+         * The code server is up and the modules are compiled, or will be compiled when they are first loaded.
+         */
+        READY,
+        /**
+         * The code server is up but at least one module could not be compiled in the background.
+         */
+        FAILED
+    }
+
+    private static final Pattern CACHE_JS_FILE = Pattern.compile("^/([^/]+)/.*?([\\dA-F]{32})\\.cache\\.js$");
+
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+    static {
+        MIME_TYPES.put("js", "application/javascript");
+        MIME_TYPES.put("json", "application/json");
+        MIME_TYPES.put("map", "application/json");
+        MIME_TYPES.put("css", "text/css");
+        MIME_TYPES.put("html", "text/html");
+        MIME_TYPES.put("txt", "text/plain");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("svg", "image/svg+xml");
+    }
+
+    private CodeServerOutputs() {
+
+    }
+
+    /**
+     * Publish the war directory that currently holds the output for the given module.
+     *
+     * @param outputModuleName the name of the module after renaming
+     * @param warDir the directory the compiler wrote to
+     */
+    public static void publish(final String outputModuleName, final Path warDir) {
+        if (outputModuleName == null || warDir == null) {
+            return;
+        }
+        System.setProperty(WAR_DIR_PROPERTY_PREFIX + outputModuleName, warDir.toAbsolutePath().normalize().toString());
+    }
+
+    /**
+     * @return a number that changes every time the output of the code server may have changed
+     */
+    public static long generation() {
+        return parseGeneration(System.getProperty(GENERATION_PROPERTY));
+    }
+
+    private static long parseGeneration(final Object generation) {
+        if (generation == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(generation.toString());
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    /**
+     * Marks everything that was read from the code server so far as stale. Each class loader has its own copy of
+     * this class, so the increment is done atomically by the (shared) system properties themselves rather than
+     * under a lock on the class.
+     */
+    public static void invalidate() {
+        System.getProperties().compute(GENERATION_PROPERTY, (key, generation) -> String.valueOf(parseGeneration(generation) + 1));
+    }
+
+    /**
+     * @param state the current state of the code server
+     */
+    public static void setState(final State state) {
+        System.setProperty(STATE_PROPERTY, state.name());
+    }
+
+    /**
+     * @return the current state of the code server
+     */
+    public static State state() {
+        final String state = System.getProperty(STATE_PROPERTY);
+        if (state == null) {
+            return State.STARTING;
+        }
+        try {
+            return State.valueOf(state);
+        } catch (IllegalArgumentException iae) {
+            return State.STARTING;
+        }
+    }
+
+    /**
+     * @return the body of a response to the readiness path
+     */
+    public static String readinessJson(final State state) {
+        return String.format("{\"status\":\"%s\"}", state.name().toLowerCase());
+    }
+
+    /**
+     * Finds the compiled file for a request path of the form '/module/file'.
+     *
+     * @param requestPath the path of the request
+     * @return the file on disk or null if the module has not been compiled or the file does not exist
+     */
+    public static Path find(final String requestPath) {
+        if (requestPath == null || requestPath.length() < 2 || requestPath.charAt(0) != '/') {
+            return null;
+        }
+        final int secondSlash = requestPath.indexOf('/', 1);
+        if (secondSlash < 0) {
+            return null;
+        }
+        final String warDir = System.getProperty(WAR_DIR_PROPERTY_PREFIX + requestPath.substring(1, secondSlash));
+        if (warDir == null) {
+            return null;
+        }
+        final Path root = Paths.get(warDir);
+        final Path file = root.resolve(requestPath.substring(1)).normalize();
+        // do not allow escaping the output directory
+        if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * The validators of a compiled file, made from its size and modification time since every compile writes its
+     * output again.
+     */
+    public static final class FileValidator {
+
+        private final String etag;
+
+        private final long lastModified;
+
+        private FileValidator(final String etag, final long lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the ETag of the file
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the Last-Modified header of the file
+         */
+        public String getLastModified() {
+            return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(this.lastModified).atZone(ZoneOffset.UTC));
+        }
+
+        /**
+         * @return true if the request headers show that the client already has this file
+         */
+        public boolean isNotModified(final String ifNoneMatch, final String ifModifiedSince) {
+            // if-none-match takes precedence when both are present
+            if (ifNoneMatch != null) {
+                for (final String candidate : ifNoneMatch.split(",")) {
+                    final String trimmed = candidate.trim();
+                    final String opaque = trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+                    if ("*".equals(opaque) || this.etag.equals(opaque)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (ifModifiedSince != null) {
+                try {
+                    final long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                    // http dates only have second precision
+                    return this.lastModified / 1000 <= since / 1000;
+                } catch (DateTimeParseException ex) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads the validators of a compiled file, this touches the disk.
+     *
+     * @param file the file as it is sent, a compressed variant has validators of its own
+     * @return the validators of the file
+     */
+    public static FileValidator validator(final Path file) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        return new FileValidator(String.format("\"%x-%x\"", attributes.size(), lastModified), lastModified);
+    }
+
+    /**
+     * @return the source map url the code server would attach to the given request path, or null if it is not a permutation
+     */
+    public static String sourceMapUrl(final String requestPath) {
+        final Matcher matcher = CACHE_JS_FILE.matcher(requestPath);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return String.format("/sourcemaps/%s/%s_sourcemap.json", matcher.group(1), matcher.group(2));
+    }
+
+    /**
+     * @return true if the output at the given path never changes (it is named by the hash of its content)
+     */
+    public static boolean isImmutable(final String requestPath) {
+        return requestPath.endsWith(".cache.js");
+    }
+
+    public static String mimeType(final String requestPath) {
+        final int dot = requestPath.lastIndexOf('.');
+        if (dot >= 0) {
+            final String mimeType = MIME_TYPES.get(requestPath.substring(dot + 1));
+            if (mimeType != null) {
+                return mimeType;
+            }
+        }
+        final String guessed = URLConnection.guessContentTypeFromName(requestPath);
+        return guessed != null ? guessed : "application/octet-stream";
+    }
+}
@@ -1,9 +1,14 @@
 package io.github.chrisruffalo.qgwt.runtime;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.jboss.logging.Logger;
 
 import javax.servlet.Filter;
@@ -15,64 +20,204 @@ import javax.servlet.ServletResponse;
 import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 @WebFilter
 public class CodeServerProxy implements Filter {
 
     public static final String BIND_ADDRESS_PARAM = "gwt-codeserver-bindadress";
     public static final String BIND_PORT_PARAM = "gwt-codeserver-bindport";
+    public static final String MAX_CONNECTIONS_PARAM = "gwt-codeserver-max-connections";
+    public static final String MAX_CONNECTIONS_PER_ROUTE_PARAM = "gwt-codeserver-max-connections-per-route";
+    public static final String CONNECT_TIMEOUT_PARAM = "gwt-codeserver-connect-timeout";
+    public static final String READ_TIMEOUT_PARAM = "gwt-codeserver-read-timeout";
+    public static final String KEEP_ALIVE_PARAM = "gwt-codeserver-keep-alive";
+    public static final String CHUNK_SIZE_PARAM = "gwt-codeserver-chunk-size";
+    public static final String PREFIXES_PARAM = "gwt-codeserver-prefixes";
+    public static final String SERVE_FROM_DISK_PARAM = "gwt-codeserver-serve-from-disk";
+    public static final String CACHE_SIZE_PARAM = "gwt-codeserver-cache-size";
 
     private static final Logger LOGGER = Logger.getLogger(CodeServerProxy.class);
 
+    /**
+     * Headers that describe the connection to the code server and not the content, these are left to the container.
+     */
+    private static final Set<String> HOP_BY_HOP_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    static {
+        HOP_BY_HOP_HEADERS.add("Connection");
+        HOP_BY_HOP_HEADERS.add("Keep-Alive");
+        HOP_BY_HOP_HEADERS.add("Transfer-Encoding");
+        HOP_BY_HOP_HEADERS.add("Content-Length");
+        HOP_BY_HOP_HEADERS.add("TE");
+        HOP_BY_HOP_HEADERS.add("Trailer");
+        HOP_BY_HOP_HEADERS.add("Upgrade");
+    }
+
     private String bindAddress = "127.0.0.1";
     private int bindPort = 9876;
 
+    private CloseableHttpClient httpClient;
+
+    /**
+     * Only paths served by the code server are proxied, everything else goes straight down the chain.
+     */
+    private PathPrefixMatcher prefixMatcher = PathPrefixMatcher.parse(null);
+
+    private boolean serveFromDisk = false;
+
+    private ProxyResponseCache responseCache = new ProxyResponseCache(0);
+
+    /**
+     * Each request thread reuses its own transfer buffer so streaming a body does not allocate.
+     */
+    private ThreadLocal<byte[]> transferBuffer;
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         this.bindAddress = filterConfig.getInitParameter(BIND_ADDRESS_PARAM);
         if (this.bindAddress.equals("0.0.0.0")) { // if binding to all, connect to local host
             this.bindAddress = "127.0.0.1";
         }
+        this.bindPort = intParam(filterConfig, BIND_PORT_PARAM, this.bindPort);
+        this.prefixMatcher = PathPrefixMatcher.parse(filterConfig.getInitParameter(PREFIXES_PARAM));
+        this.serveFromDisk = Boolean.parseBoolean(filterConfig.getInitParameter(SERVE_FROM_DISK_PARAM));
+        this.responseCache = new ProxyResponseCache(longParam(filterConfig, CACHE_SIZE_PARAM, 0));
+
+        // one pooled client for the lifetime of the filter so that connections to the code server are kept alive
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(intParam(filterConfig, MAX_CONNECTIONS_PARAM, 50));
+        connectionManager.setDefaultMaxPerRoute(intParam(filterConfig, MAX_CONNECTIONS_PER_ROUTE_PARAM, 20));
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(intParam(filterConfig, CONNECT_TIMEOUT_PARAM, 5000))
+            .setConnectionRequestTimeout(intParam(filterConfig, CONNECT_TIMEOUT_PARAM, 5000))
+            .setSocketTimeout(intParam(filterConfig, READ_TIMEOUT_PARAM, 600000))
+            .build();
+
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            // compression is done once per compile here, not by the code server for each proxied request
+            .disableContentCompression()
+            .evictIdleConnections(intParam(filterConfig, KEEP_ALIVE_PARAM, 60000), TimeUnit.MILLISECONDS)
+            .build();
+
+        final int chunkSize = Math.max(1024, intParam(filterConfig, CHUNK_SIZE_PARAM, 64 * 1024));
+        this.transferBuffer = ThreadLocal.withInitial(() -> new byte[chunkSize]);
+    }
+
+    private static int intParam(final FilterConfig filterConfig, final String name, final int defaultValue) {
+        try {
+            final String param = filterConfig.getInitParameter(name);
+            if (param != null) {
+                return Integer.parseInt(param);
+            }
+        } catch (NumberFormatException nfe) {
+            LOGGER.warnf("Invalid value for filter parameter '%s', using default: %d", name, defaultValue);
+        }
+        return defaultValue;
+    }
+
+    private static long longParam(final FilterConfig filterConfig, final String name, final long defaultValue) {
         try {
-            final String bindPortParam = filterConfig.getInitParameter(BIND_PORT_PARAM);
-            this.bindPort = Integer.parseInt(bindPortParam);
+            final String param = filterConfig.getInitParameter(name);
+            if (param != null) {
+                return Long.parseLong(param);
+            }
         } catch (NumberFormatException nfe) {
-            // no op
+            LOGGER.warnf("Invalid value for filter parameter '%s', using default: %d", name, defaultValue);
         }
+        return defaultValue;
     }
 
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
-        // todo: might want to filter out anything in the resources directory
-
-        // attempt proxy on get requests only
+        // attempt proxy on get requests for code server paths only
         if (servletRequest instanceof HttpServletRequest && servletResponse instanceof HttpServletResponse) {
             final HttpServletRequest httpServletRequest = (HttpServletRequest) servletRequest;
             final HttpServletResponse httpServletResponse = (HttpServletResponse) servletResponse;
             final String method = httpServletRequest.getMethod();
-            if ("GET".equalsIgnoreCase(method)) {
-                // proxy get request
-                try (final CloseableHttpClient httpClient = HttpClients.createDefault()) {
-                    final String proxyPath = String.format("http://%s:%d%s", this.bindAddress, this.bindPort, httpServletRequest.getRequestURI());
+            final String requestPath = httpServletRequest.getRequestURI();
+            if ("GET".equalsIgnoreCase(method) && CodeServerOutputs.READINESS_PATH.equals(requestPath)) {
+                sendReadiness(httpServletResponse);
+                return;
+            }
+            if ("GET".equalsIgnoreCase(method) && this.prefixMatcher.matches(requestPath)) {
+                // time spent on requests for code server paths, answered or not
+                final long start = System.nanoTime();
+                try {
+                    final String query = httpServletRequest.getQueryString();
+                    final String uri = query == null ? requestPath : requestPath + "?" + query;
+
+                    // anything read from the code server since the last compile is answered from memory
+                    final boolean cacheable = this.responseCache.isCacheable(requestPath);
+                    if (cacheable) {
+                        final ProxyResponseCache.Entry cached = this.responseCache.get(uri);
+                        if (cached != null) {
+                            LOGGER.tracef("Serving %s from cache", uri);
+                            send(cached, httpServletRequest, httpServletResponse);
+                            return;
+                        }
+                    }
+
+                    // compiled output can be sent directly from the code server's output directory
+                    if (this.serveFromDisk && serveFromDisk(httpServletRequest, httpServletResponse)) {
+                        return;
+                    }
+
+                    // proxy get request
+                    final long generation = CodeServerOutputs.generation();
+                    final String proxyPath = String.format("http://%s:%d%s", this.bindAddress, this.bindPort, uri);
                     LOGGER.tracef("Proxying GET request to %s", proxyPath);
                     final  HttpGet get = new HttpGet(proxyPath);
-                    try (final CloseableHttpResponse response = httpClient.execute(get)) {
-                        // only return results for a successful response that has content
-                        if (200 == response.getStatusLine().getStatusCode() && response.getEntity().getContentLength() > 0) {
+                    try (final CloseableHttpResponse response = this.httpClient.execute(get)) {
+                        // only return results for a successful response that has (or may have, when chunked) content
+                        final HttpEntity entity = response.getEntity();
+                        if (200 == response.getStatusLine().getStatusCode() && entity != null && entity.getContentLength() != 0) {
+                            // keep the body if it is small enough to be cached
+                            if (cacheable && entity.getContentLength() <= this.responseCache.getMaxEntryBytes()) {
+                                proxyAndCache(uri, generation, response, httpServletRequest, httpServletResponse);
+                                return;
+                            }
                             // return the status
                             httpServletResponse.setStatus(response.getStatusLine().getStatusCode());
                             // copy headers
-                            Arrays.stream(response.getAllHeaders()).forEach(header -> {
-                                httpServletResponse.setHeader(header.getName(), header.getValue());
-                            });
-                            // write body
-                            response.getEntity().writeTo(httpServletResponse.getOutputStream());
+                            for (final Header header : response.getAllHeaders()) {
+                                if (!HOP_BY_HOP_HEADERS.contains(header.getName())) {
+                                    httpServletResponse.setHeader(header.getName(), header.getValue());
+                                }
+                            }
+                            if (entity.getContentLength() > 0) {
+                                httpServletResponse.setContentLengthLong(entity.getContentLength());
+                            }
+                            // stream body as it arrives
+                            try (final InputStream inputStream = entity.getContent()) {
+                                transfer(inputStream, httpServletResponse.getOutputStream());
+                            }
                             // done, no more filter chain
                             return;
                         }
+                        // consume whatever is left so the connection can go back to the pool
+                        EntityUtils.consume(response.getEntity());
                     }
+                } finally {
+                    CodeServerTimings.since(CodeServerTimings.Phase.PROXY, start);
                 }
             }
         }
@@ -81,8 +226,162 @@ public class CodeServerProxy implements Filter {
         filterChain.doFilter(servletRequest, servletResponse);
     }
 
+    /**
+     * Answers with the state of the code server so that tooling can wait for the background compile to finish.
+     */
+    private static void sendReadiness(final HttpServletResponse response) throws IOException {
+        final CodeServerOutputs.State state = CodeServerOutputs.state();
+        final byte[] body = CodeServerOutputs.readinessJson(state).getBytes(StandardCharsets.UTF_8);
+        response.setStatus(state == CodeServerOutputs.State.READY ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setContentType("application/json");
+        response.setHeader("Cache-Control", "no-store");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * Reads the body of the response into memory, up to the largest size the cache will hold, and sends it from
+     * the cache. If it turns out to be larger than that (when the length was not known ahead of time) whatever was
+     * read is sent and the rest is streamed as usual.
+     */
+    private void proxyAndCache(final String uri, final long generation, final CloseableHttpResponse response, final HttpServletRequest request, final HttpServletResponse servletResponse) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        final long limit = this.responseCache.getMaxEntryBytes();
+        final byte[] buffer = this.transferBuffer.get();
+        try (final InputStream inputStream = entity.getContent()) {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream(entity.getContentLength() > 0 ? (int) entity.getContentLength() : buffer.length);
+            int read;
+            while (body.size() <= limit && (read = inputStream.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            if (body.size() <= limit) {
+                final List<Map.Entry<String, String>> headers = new ArrayList<>();
+                for (final Header header : response.getAllHeaders()) {
+                    if (!HOP_BY_HOP_HEADERS.contains(header.getName())) {
+                        headers.add(new AbstractMap.SimpleImmutableEntry<>(header.getName(), header.getValue()));
+                    }
+                }
+                send(this.responseCache.put(uri, generation, headers, body.toByteArray()), request, servletResponse);
+                return;
+            }
+            servletResponse.setStatus(HttpServletResponse.SC_OK);
+            for (final Header header : response.getAllHeaders()) {
+                if (!HOP_BY_HOP_HEADERS.contains(header.getName())) {
+                    servletResponse.setHeader(header.getName(), header.getValue());
+                }
+            }
+            final OutputStream outputStream = servletResponse.getOutputStream();
+            body.writeTo(outputStream);
+            transfer(inputStream, outputStream);
+        }
+    }
+
+    /**
+     * Answers from a cached entry, with a 304 if the client already has it.
+     */
+    private void send(final ProxyResponseCache.Entry entry, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final boolean notModified = entry.isNotModified(request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"));
+        final boolean compressed = entry.getCompressedBody() != null && Gzip.isAccepted(request.getHeader("Accept-Encoding"));
+        response.setStatus(notModified ? HttpServletResponse.SC_NOT_MODIFIED : HttpServletResponse.SC_OK);
+        for (final Map.Entry<String, String> header : entry.getHeaders()) {
+            response.setHeader(header.getKey(), header.getValue());
+        }
+        response.setHeader("ETag", compressed ? entry.getCompressedEtag() : entry.getEtag());
+        if (!notModified) {
+            final byte[] body = compressed ? entry.getCompressedBody() : entry.getBody();
+            if (compressed) {
+                response.setHeader("Content-Encoding", "gzip");
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /**
+     * Sends a file from the output of the last compile, with the same headers the code server would have
+     * used, without going through the code server.
+     *
+     * @return true if the request was answered
+     */
+    private boolean serveFromDisk(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final String requestPath = request.getRequestURI();
+        final Path file = CodeServerOutputs.find(requestPath);
+        if (file == null) {
+            return false;
+        }
+        // send the variant compressed after the compile if the client takes it
+        final Path compressed = Gzip.isCompressible(requestPath) && Gzip.isAccepted(request.getHeader("Accept-Encoding")) ? Gzip.findCompressed(file) : null;
+        final Path source = compressed != null ? compressed : file;
+        LOGGER.tracef("Serving %s from %s", requestPath, source);
+
+        // nothing is set on the response until the file is open, if it is gone the code server answers instead
+        final CodeServerOutputs.FileValidator validator;
+        final FileChannel channel;
+        try {
+            validator = CodeServerOutputs.validator(source);
+            channel = FileChannel.open(source, StandardOpenOption.READ);
+        } catch (IOException ex) {
+            LOGGER.tracef("Could not open %s, proxying instead: %s", source, ex.getMessage());
+            return false;
+        }
+        try (channel) {
+            response.setHeader("Access-Control-Allow-Origin", "*");
+            final String sourceMapUrl = CodeServerOutputs.sourceMapUrl(requestPath);
+            if (sourceMapUrl != null) {
+                response.setHeader("X-SourceMap", sourceMapUrl);
+                response.setHeader("SourceMap", sourceMapUrl);
+            }
+            if (!CodeServerOutputs.isImmutable(requestPath)) {
+                // kept by the browser but checked with the validators every time, like the cached responses
+                response.setHeader("Cache-Control", "no-cache");
+            }
+            if (Gzip.isCompressible(requestPath)) {
+                response.setHeader("Vary", "Accept-Encoding");
+            }
+            response.setHeader("ETag", validator.getEtag());
+            response.setHeader("Last-Modified", validator.getLastModified());
+            if (validator.isNotModified(request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+            response.setStatus(HttpServletResponse.SC_OK);
+            if (compressed != null) {
+                response.setHeader("Content-Encoding", "gzip");
+            }
+            response.setContentType(CodeServerOutputs.mimeType(requestPath));
+            final long size = channel.size();
+            response.setContentLengthLong(size);
+            final WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the stream to the output one chunk at a time so that only a single buffer's worth of the
+     * body is ever held in memory.
+     */
+    private void transfer(final InputStream inputStream, final OutputStream outputStream) throws IOException {
+        final byte[] buffer = this.transferBuffer.get();
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+    }
+
     @Override
     public void destroy() {
-
+        LOGGER.debugf("Code server proxy timings: %s", CodeServerTimings.summary(CodeServerTimings.Phase.PROXY));
+        if (this.httpClient != null) {
+            try {
+                this.httpClient.close();
+            } catch (IOException e) {
+                LOGGER.debugf("Could not close code server proxy client: %s", e.getMessage());
+            }
+            this.httpClient = null;
+        }
     }
 }
@@ -0,0 +1,17 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import io.quarkus.runtime.ShutdownContext;
+import io.quarkus.runtime.annotations.Recorder;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+@Recorder
+public class CodeServerProxyRecorder {
+
+    public Handler<RoutingContext> createReactiveProxy(final ShutdownContext shutdownContext, final String bindAddress, final int bindPort, final String prefixes, final boolean serveFromDisk, final long cacheSize, final int maxConnections, final int connectTimeout, final long readTimeout, final int keepAlive) {
+        final ReactiveCodeServerProxy proxy = new ReactiveCodeServerProxy(bindAddress, bindPort, prefixes, serveFromDisk, cacheSize, maxConnections, connectTimeout, readTimeout, keepAlive);
+        shutdownContext.addShutdownTask(proxy::close);
+        return proxy;
+    }
+
+}
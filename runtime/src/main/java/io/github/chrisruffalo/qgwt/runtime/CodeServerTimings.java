@@ -0,0 +1,245 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps how often and for how long the extension has spent time on each phase of dev mode, so that it is possible
+ * to tell where a reload went.
+ *
+ * Each phase is counted in memory without locking. Most phases are timed by the deployment class loader and read
+ * by the application (for metrics) so, like {@link CodeServerOutputs}, a snapshot of them is also published in a
+ * system property every time one of them runs. Requests through the proxy are timed in the application itself,
+ * are never published and can be handed to a timer of the metrics system as they are recorded.
+ */
+public final class CodeServerTimings {
+
+    private static final String PROPERTY_PREFIX = "qgwt.timing.";
+
+    /**
+     * The phases that are timed.
+     */
+    public enum Phase {
+        /**
+         * Reading the module descriptors of the module graph.
+         */
+        MODULE_RESOLUTION("module-resolution", "Reading the GWT module graph", true),
+        /**
+         * Extracting module sources and the GWT bridge from jars.
+         */
+        EXTRACTION("extraction", "Extracting GWT module sources from jars", true),
+        /**
+         * Copying changed module sources into the classes directory.
+         */
+        SOURCE_SYNC("source-sync", "Syncing GWT module sources into the classes directory", true),
+        /**
+         * Starting the code server.
+         */
+        START("start", "Starting the GWT code server", true),
+        /**
+         * Queueing recompiles of changed modules.
+         */
+        REFRESH("refresh", "Queueing GWT recompiles after a change", true),
+        /**
+         * Compiling a module, from the time the code server starts on a job until it is served or fails.
+         */
+        COMPILE("compile", "Compiling a GWT module in the code server", true),
+        /**
+         * Answering a request through the proxy.
+         */
+        PROXY("proxy", "Proxying a request to the GWT code server", false);
+
+        private final String metricName;
+
+        private final String description;
+
+        private final boolean shared;
+
+        Phase(final String name, final String description, final boolean shared) {
+            this.metricName = "qgwt." + name;
+            this.description = description;
+            this.shared = shared;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * @return true if the phase is timed in the deployment class loader and published for the application
+         */
+        public boolean isShared() {
+            return shared;
+        }
+    }
+
+    /**
+     * How often a phase ran, for how long in total and the longest single run.
+     */
+    public static final class Stats {
+
+        private final long count;
+
+        private final long totalNanos;
+
+        private final long maxNanos;
+
+        private Stats(final long count, final long totalNanos, final long maxNanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d in %dms (max %dms)", this.count, TimeUnit.NANOSECONDS.toMillis(this.totalNanos), TimeUnit.NANOSECONDS.toMillis(this.maxNanos));
+        }
+    }
+
+    /**
+     * The runs of one phase in this class loader.
+     */
+    private static final class Accumulator {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private volatile LongConsumer listener;
+
+        private Accumulator(final Stats start) {
+            this.count.add(start.count);
+            this.totalNanos.add(start.totalNanos);
+            this.maxNanos.set(start.maxNanos);
+        }
+
+        private void add(final long nanos) {
+            this.count.increment();
+            this.totalNanos.add(nanos);
+            this.maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private Stats snapshot() {
+            return new Stats(this.count.sum(), this.totalNanos.sum(), this.maxNanos.get());
+        }
+    }
+
+    private static final Stats NONE = new Stats(0, 0, 0);
+
+    private static final Map<Phase, Accumulator> ACCUMULATORS;
+    static {
+        final Map<Phase, Accumulator> accumulators = new EnumMap<>(Phase.class);
+        for (final Phase phase : Phase.values()) {
+            // a class loader that is created again carries on from what was published before it
+            accumulators.put(phase, new Accumulator(phase.shared ? parse(System.getProperty(PROPERTY_PREFIX + phase.metricName)) : NONE));
+        }
+        ACCUMULATORS = Collections.unmodifiableMap(accumulators);
+    }
+
+    private CodeServerTimings() {
+
+    }
+
+    /**
+     * @param phase the phase that ran
+     * @param nanos for how long
+     */
+    public static void record(final Phase phase, final long nanos) {
+        final Accumulator accumulator = ACCUMULATORS.get(phase);
+        accumulator.add(nanos);
+        if (phase.shared) {
+            // the snapshot is taken inside the update so that whoever publishes last publishes every run
+            System.getProperties().compute(PROPERTY_PREFIX + phase.metricName, (key, value) -> format(accumulator.snapshot()));
+        }
+        final LongConsumer listener = accumulator.listener;
+        if (listener != null) {
+            listener.accept(nanos);
+        }
+    }
+
+    /**
+     * Hands every run of the phase that is recorded in this class loader from now on to the listener, replacing
+     * any listener that was there before.
+     *
+     * @param phase the phase to listen to
+     * @param listener is given the time each run took in nanoseconds, null to stop listening
+     */
+    public static void listen(final Phase phase, final LongConsumer listener) {
+        ACCUMULATORS.get(phase).listener = listener;
+    }
+
+    /**
+     * Times a phase from the given start.
+     *
+     * @param phase the phase that ran
+     * @param startNanos when it started, as given by {@link System#nanoTime()}
+     */
+    public static void since(final Phase phase, final long startNanos) {
+        record(phase, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the timings of the given phase so far
+     */
+    public static Stats stats(final Phase phase) {
+        if (phase.shared) {
+            return parse(System.getProperty(PROPERTY_PREFIX + phase.metricName));
+        }
+        return ACCUMULATORS.get(phase).snapshot();
+    }
+
+    /**
+     * @return a line with the timings of every phase that has run so far
+     */
+    public static String summary(final Phase... phases) {
+        final String summary = Arrays.stream(phases.length > 0 ? phases : Phase.values())
+            .filter(phase -> stats(phase).getCount() > 0)
+            .map(phase -> phase.metricName.substring("qgwt.".length()) + " " + stats(phase))
+            .collect(Collectors.joining(", "));
+        return summary.isEmpty() ? "nothing timed yet" : summary;
+    }
+
+    private static String format(final Stats stats) {
+        return stats.count + ":" + stats.totalNanos + ":" + stats.maxNanos;
+    }
+
+    private static Stats parse(final String value) {
+        if (value == null) {
+            return NONE;
+        }
+        final String[] parts = value.split(":");
+        if (parts.length != 3) {
+            return NONE;
+        }
+        try {
+            return new Stats(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException nfe) {
+            return NONE;
+        }
+    }
+}
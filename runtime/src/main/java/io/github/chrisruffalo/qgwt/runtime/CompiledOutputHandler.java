@@ -0,0 +1,107 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Serves the compiled output packaged with a production build from the index written when it was built. The
+ * headers of every file are known up front, so a request is a map lookup and a write. Each file is read from the
+ * application once, the first time it is asked for, and kept in memory after that since packaged resources are
+ * not files that could be sent from disk.
+ */
+public class CompiledOutputHandler implements Handler<RoutingContext> {
+
+    private static final Logger LOGGER = Logger.getLogger(CompiledOutputHandler.class);
+
+    private final Map<String, CompiledOutputIndex.Entry> entries;
+
+    private final ClassLoader classLoader;
+
+    public CompiledOutputHandler(final Map<String, CompiledOutputIndex.Entry> entries, final ClassLoader classLoader) {
+        this.entries = entries;
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        final HttpServerRequest request = routingContext.request();
+        final boolean head = HttpMethod.HEAD.equals(request.method());
+        if (!head && !HttpMethod.GET.equals(request.method())) {
+            routingContext.next();
+            return;
+        }
+        final CompiledOutputIndex.Entry entry = this.entries.get(request.path());
+        if (entry == null) {
+            routingContext.next();
+            return;
+        }
+
+        final HttpServerResponse response = routingContext.response();
+        final boolean compressed = entry.getCompressedLength() >= 0 && Gzip.isAccepted(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        response.putHeader(HttpHeaders.CONTENT_TYPE, entry.getContentType());
+        response.putHeader(HttpHeaders.CACHE_CONTROL, entry.getCacheControl());
+        response.putHeader(HttpHeaders.ETAG, compressed ? entry.getCompressedEtag() : entry.getEtag());
+        if (entry.getCompressedLength() >= 0) {
+            response.putHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (entry.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatusCode(304).end();
+            return;
+        }
+        if (compressed) {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if (head) {
+            response.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(compressed ? entry.getCompressedLength() : entry.getLength()));
+            response.end();
+            return;
+        }
+
+        final Buffer body = compressed ? entry.getCompressedBody() : entry.getBody();
+        if (body != null) {
+            response.end(body);
+            return;
+        }
+        // reading from the application jar blocks, it only happens once for each file
+        routingContext.vertx().<Buffer>executeBlocking(
+            promise -> promise.complete(load(entry, compressed)),
+            false,
+            loaded -> {
+                if (loaded.failed()) {
+                    routingContext.fail(loaded.cause());
+                } else {
+                    response.end(loaded.result());
+                }
+            });
+    }
+
+    private Buffer load(final CompiledOutputIndex.Entry entry, final boolean compressed) {
+        final String resource = compressed ? entry.getCompressedResource() : entry.getResource();
+        LOGGER.tracef("Loading %s for %s", resource, entry.getPath());
+        try (final InputStream in = this.classLoader.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException(String.format("Compiled output '%s' is missing from the application", resource));
+            }
+            final Buffer body = Buffer.buffer(in.readAllBytes());
+            if (compressed) {
+                entry.setCompressedBody(body);
+            } else {
+                entry.setBody(body);
+            }
+            return body;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Describes the compiled output packaged with a production build: for every file the request path it is served
+ * at, its length, its ETag, its content type and its Cache-Control header, all worked out when the application is
+ * built so that serving a file is a map lookup. The files themselves (and a gzip variant of those that compress)
+ * are packaged as resources under {@link #RESOURCE_ROOT}.
+ *
+ * GWT names files that never change '*.cache.*' and files that must always be checked '*.nocache.*', the first are
+ * cached by the browser for good and the second only for a short time.
+ */
+public final class CompiledOutputIndex {
+
+    /**
+     * Where the compiled output is packaged, by request path.
+     */
+    public static final String RESOURCE_ROOT = "META-INF/qgwt/war/";
+
+    /**
+     * Where the index is packaged.
+     */
+    public static final String INDEX_RESOURCE = "META-INF/qgwt/war.idx";
+
+    private static final int MAGIC = 0x51475758;
+
+    private static final int VERSION = 1;
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    private static final String REVALIDATE = "public, no-cache";
+
+    /**
+     * A compiled file.
+     */
+    public static final class Entry {
+
+        private final String path;
+
+        private final long length;
+
+        private final long compressedLength;
+
+        private final String etag;
+
+        private final String contentType;
+
+        private final String cacheControl;
+
+        private volatile Buffer body;
+
+        private volatile Buffer compressedBody;
+
+        private Entry(final String path, final long length, final long compressedLength, final String etag, final String contentType, final String cacheControl) {
+            this.path = path;
+            this.length = length;
+            this.compressedLength = compressedLength;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+        }
+
+        /**
+         * @return the request path, as in '/app/app.nocache.js'
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the length of the gzip variant, or -1 if there is none
+         */
+        public long getCompressedLength() {
+            return compressedLength;
+        }
+
+        /**
+         * @return the ETag of the identity encoded body
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the ETag of the gzip encoded body, each representation needs its own strong validator
+         */
+        public String getCompressedEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getCacheControl() {
+            return cacheControl;
+        }
+
+        /**
+         * @return the resource the body is packaged as
+         */
+        public String getResource() {
+            return RESOURCE_ROOT + path.substring(1);
+        }
+
+        /**
+         * @return the resource the gzip variant is packaged as
+         */
+        public String getCompressedResource() {
+            return getResource() + Gzip.EXTENSION;
+        }
+
+        /**
+         * @return the body once it has been loaded, or null
+         */
+        public Buffer getBody() {
+            return body;
+        }
+
+        public void setBody(final Buffer body) {
+            this.body = body;
+        }
+
+        /**
+         * @return the gzip variant once it has been loaded, or null
+         */
+        public Buffer getCompressedBody() {
+            return compressedBody;
+        }
+
+        public void setCompressedBody(final Buffer compressedBody) {
+            this.compressedBody = compressedBody;
+        }
+
+        /**
+         * @return true if the If-None-Match header shows that the client already has this entry
+         */
+        public boolean isNotModified(final String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (final String candidate : ifNoneMatch.split(",")) {
+                final String trimmed = candidate.trim();
+                final String opaque = trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+                if ("*".equals(opaque) || this.etag.equals(opaque) || (this.compressedLength >= 0 && getCompressedEtag().equals(opaque))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private CompiledOutputIndex() {
+
+    }
+
+    /**
+     * Describes a compiled file.
+     *
+     * @param path the request path, as in '/app/app.nocache.js'
+     * @param body the content of the file
+     * @param compressedBody the gzip variant, or null if there is none
+     * @param nocacheMaxAge how many seconds the browser may keep '*.nocache.*' files without checking them
+     */
+    public static Entry entry(final String path, final byte[] body, final byte[] compressedBody, final long nocacheMaxAge) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder etag = new StringBuilder(34).append('"');
+        for (final byte b : digest.digest(body)) {
+            etag.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        etag.append('"');
+        return new Entry(path, body.length, compressedBody != null ? compressedBody.length : -1, etag.toString(), CodeServerOutputs.mimeType(path), cacheControl(path, nocacheMaxAge));
+    }
+
+    /**
+     * @return the Cache-Control header for the file at the given request path
+     */
+    public static String cacheControl(final String path, final long nocacheMaxAge) {
+        final String name = path.substring(path.lastIndexOf('/') + 1);
+        if (name.contains(".nocache.")) {
+            return nocacheMaxAge > 0 ? String.format("public, max-age=%d, must-revalidate", nocacheMaxAge) : REVALIDATE;
+        }
+        if (name.contains(".cache.")) {
+            return IMMUTABLE;
+        }
+        return REVALIDATE;
+    }
+
+    public static void write(final OutputStream outputStream, final Collection<Entry> entries) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (final Entry entry : entries) {
+            out.writeUTF(entry.path);
+            out.writeLong(entry.length);
+            out.writeLong(entry.compressedLength);
+            out.writeUTF(entry.etag);
+            out.writeUTF(entry.contentType);
+            out.writeUTF(entry.cacheControl);
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the entries by request path
+     */
+    public static Map<String, Entry> read(final InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a compiled output index or written by another version");
+        }
+        final int count = in.readInt();
+        final Map<String, Entry> entries = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            final Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readUTF(), in.readUTF(), in.readUTF());
+            entries.put(entry.path, entry);
+        }
+        return Collections.unmodifiableMap(entries);
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import io.quarkus.runtime.annotations.Recorder;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+@Recorder
+public class CompiledOutputRecorder {
+
+    public Handler<RoutingContext> createCompiledOutputHandler() {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        try (final InputStream in = classLoader.getResourceAsStream(CompiledOutputIndex.INDEX_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException(String.format("Compiled output index '%s' is missing from the application", CompiledOutputIndex.INDEX_RESOURCE));
+            }
+            final Map<String, CompiledOutputIndex.Entry> entries = CompiledOutputIndex.read(in);
+            return new CompiledOutputHandler(entries, classLoader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
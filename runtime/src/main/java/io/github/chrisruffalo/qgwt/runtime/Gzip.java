@@ -0,0 +1,143 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import org.jboss.logging.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Produces gzip variants of compiled output once, so they can be sent to browsers that accept them
+ * instead of compressing (or not compressing) the same bytes on every request.
+ */
+public final class Gzip {
+
+    private static final Logger LOGGER = Logger.getLogger(Gzip.class);
+
+    public static final String EXTENSION = ".gz";
+
+    /**
+     * Below this size the gzip framing costs more than it saves.
+     */
+    private static final int MIN_SIZE = 1024;
+
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = new HashSet<>();
+    static {
+        COMPRESSIBLE_EXTENSIONS.add("js");
+        COMPRESSIBLE_EXTENSIONS.add("css");
+        COMPRESSIBLE_EXTENSIONS.add("map");
+        COMPRESSIBLE_EXTENSIONS.add("json");
+        COMPRESSIBLE_EXTENSIONS.add("html");
+        COMPRESSIBLE_EXTENSIONS.add("txt");
+        COMPRESSIBLE_EXTENSIONS.add("svg");
+    }
+
+    private Gzip() {
+
+    }
+
+    /**
+     * @return true if content at the given path is text that compresses well
+     */
+    public static boolean isCompressible(final String path) {
+        final int dot = path.lastIndexOf('.');
+        return dot >= 0 && dot > path.lastIndexOf('/') && COMPRESSIBLE_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param acceptEncoding the value of the Accept-Encoding request header, may be null
+     * @return true if the client accepts a gzip encoded body
+     */
+    public static boolean isAccepted(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim();
+            if (!"gzip".equalsIgnoreCase(name) && !"*".equals(name)) {
+                continue;
+            }
+            // an explicit 'q=0' means the coding is not acceptable
+            for (int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].trim().replace(" ", "");
+                if (parameter.startsWith("q=") && parameter.substring(2).matches("0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the compressed body, or null if it is too small to be worth compressing
+     */
+    public static byte[] compress(final byte[] body) {
+        if (body.length < MIN_SIZE) {
+            return null;
+        }
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 3);
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Finds the precompressed sibling of a file if it is at least as new as the file itself.
+     *
+     * @return the '.gz' file, or null if there is none
+     */
+    public static Path findCompressed(final Path file) {
+        final Path compressed = file.resolveSibling(file.getFileName().toString() + EXTENSION);
+        try {
+            if (Files.isRegularFile(compressed) && Files.getLastModifiedTime(compressed).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+                return compressed;
+            }
+        } catch (IOException e) {
+            LOGGER.tracef("Could not check %s: %s", compressed, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Writes a '.gz' sibling next to every compressible file in the directory that does not have an up-to-date one
+     * already. Each variant is written to a temporary file and moved into place so a reader never sees a partial file.
+     *
+     * @param directory the root of the compiled output
+     * @return the number of files that were compressed
+     */
+    public static int compressAll(final Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        int count = 0;
+        try (final Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                final String name = file.getFileName().toString();
+                if (!isCompressible(name) || !Files.isRegularFile(file) || Files.size(file) < MIN_SIZE || findCompressed(file) != null) {
+                    continue;
+                }
+                final Path temporary = file.resolveSibling(name + EXTENSION + ".tmp");
+                try (final OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary), 8192)) {
+                    Files.copy(file, out);
+                }
+                Files.move(temporary, file.resolveSibling(name + EXTENSION), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+/**
+ * A character trie of path prefixes. Matching walks the path at most once so it costs O(path length)
+ * no matter how many prefixes are registered.
+ */
+public class PathPrefixMatcher {
+
+    /**
+     * Separator used when a set of prefixes has to be passed around as a single string (filter init parameters).
+     */
+    public static final String SEPARATOR = ",";
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        private Node child(final char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node add(final char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    private final Node root = new Node();
+
+    private final boolean empty;
+
+    public PathPrefixMatcher(final Collection<String> prefixes) {
+        boolean added = false;
+        for (final String prefix : prefixes) {
+            if (prefix == null || prefix.isEmpty()) {
+                continue;
+            }
+            Node current = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                current = current.add(prefix.charAt(i));
+            }
+            current.terminal = true;
+            added = true;
+        }
+        this.empty = !added;
+    }
+
+    /**
+     * Parses a matcher from prefixes joined with {@link #SEPARATOR}.
+     */
+    public static PathPrefixMatcher parse(final String joined) {
+        if (joined == null || joined.trim().isEmpty()) {
+            return new PathPrefixMatcher(Collections.emptyList());
+        }
+        return new PathPrefixMatcher(Arrays.stream(joined.split(SEPARATOR)).map(String::trim).collect(Collectors.toList()));
+    }
+
+    /**
+     * @return true if no prefixes were given, in which case the matcher accepts every path
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @param path to test
+     * @return true if the path starts with any of the prefixes (or if the matcher is empty)
+     */
+    public boolean matches(final String path) {
+        if (empty) {
+            return true;
+        }
+        if (path == null) {
+            return false;
+        }
+        Node current = root;
+        for (int i = 0; i < path.length(); i++) {
+            current = current.child(path.charAt(i));
+            if (current == null) {
+                return false;
+            }
+            if (current.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,239 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A bounded, in-memory cache of successful responses from the code server shared by the proxies. The
+ * cache is limited by the total size of the bodies it holds and evicts the least recently used entries
+ * first. Every entry remembers the compile generation it was read in and is discarded as soon as the
+ * code server finishes a new compile.
+ *
+ * Entries carry an ETag and Last-Modified value so that conditional requests from the browser can be
+ * answered with a 304 without consulting the code server at all. Text entries are compressed once, when
+ * they are stored, and the gzip variant is sent to browsers that accept it.
+ */
+public class ProxyResponseCache {
+
+    /**
+     * Endpoints that are answered fresh by the code server on every request and must never be cached.
+     */
+    private static final PathPrefixMatcher UNCACHEABLE = PathPrefixMatcher.parse("/recompile/,/recompile-requester/,/log/,/progress,/clean");
+
+    /**
+     * The code server marks everything that is not a permutation as 'no-store'. Cached entries are only
+     * marked 'no-cache' instead so that the browser keeps them and revalidates with the ETag.
+     */
+    private static final String REVALIDATE = "no-cache";
+
+    public static final class Entry {
+
+        private final List<Map.Entry<String, String>> headers;
+
+        private final byte[] body;
+
+        private final byte[] compressedBody;
+
+        private final String etag;
+
+        private final long lastModified;
+
+        private final long generation;
+
+        private Entry(final List<Map.Entry<String, String>> headers, final byte[] body, final byte[] compressedBody, final String etag, final long lastModified, final long generation) {
+            this.headers = headers;
+            this.body = body;
+            this.compressedBody = compressedBody;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.generation = generation;
+        }
+
+        /**
+         * @return the headers to send with the body, including the Last-Modified header but not the ETag, which
+         *         depends on the encoding
+         */
+        public List<Map.Entry<String, String>> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the gzip encoded body, or null if the entry is not compressed
+         */
+        public byte[] getCompressedBody() {
+            return compressedBody;
+        }
+
+        /**
+         * @return the ETag of the identity encoded body
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the ETag of the gzip encoded body, each representation needs its own strong validator
+         */
+        public String getCompressedEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+
+        private long size() {
+            return body.length + (compressedBody != null ? compressedBody.length : 0);
+        }
+
+        /**
+         * @return true if the request headers show that the client already has this entry
+         */
+        public boolean isNotModified(final String ifNoneMatch, final String ifModifiedSince) {
+            // if-none-match takes precedence when both are present
+            if (ifNoneMatch != null) {
+                for (final String candidate : ifNoneMatch.split(",")) {
+                    final String trimmed = candidate.trim();
+                    final String opaque = trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+                    if ("*".equals(opaque) || this.etag.equals(opaque) || (this.compressedBody != null && getCompressedEtag().equals(opaque))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (ifModifiedSince != null) {
+                try {
+                    final long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                    // http dates only have second precision
+                    return this.lastModified / 1000 <= since / 1000;
+                } catch (DateTimeParseException ex) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final long maxBytes;
+
+    private final long maxEntryBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long currentBytes = 0;
+
+    /**
+     * @param maxBytes the total size of the bodies that may be held, 0 or less disables the cache
+     */
+    public ProxyResponseCache(final long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        // keep a single large permutation from flushing everything else out
+        this.maxEntryBytes = this.maxBytes / 4;
+    }
+
+    /**
+     * @return true if a response for the given path may be cached at all
+     */
+    public boolean isCacheable(final String requestPath) {
+        return this.maxBytes > 0 && !UNCACHEABLE.matches(requestPath);
+    }
+
+    /**
+     * @return the largest body that will be accepted by {@link #put(String, long, List, byte[])}
+     */
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * @param uri the full request uri, including the query
+     * @return the cached entry if there is one from the current compile, null otherwise
+     */
+    public synchronized Entry get(final String uri) {
+        if (this.maxBytes <= 0) {
+            return null;
+        }
+        final Entry entry = this.entries.get(uri);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.generation != CodeServerOutputs.generation()) {
+            this.entries.remove(uri);
+            this.currentBytes -= entry.size();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Creates an entry for the response and stores it if it fits.
+     *
+     * @param uri the full request uri, including the query
+     * @param generation the generation from before the request was sent to the code server, so that a response
+     *                   that crossed a compile is not mistaken for current output
+     * @param headers the end-to-end headers of the code server response
+     * @param body the complete body
+     * @return the entry, which can be sent even if it was too large to be kept
+     */
+    public Entry put(final String uri, final long generation, final List<Map.Entry<String, String>> headers, final byte[] body) {
+        final long now = System.currentTimeMillis();
+
+        final CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        final String etag = String.format("\"%x-%x-%x\"", generation, body.length, crc.getValue());
+
+        final int queryStart = uri.indexOf('?');
+        final boolean compressible = Gzip.isCompressible(queryStart < 0 ? uri : uri.substring(0, queryStart));
+        final byte[] compressedBody = compressible && body.length <= this.maxEntryBytes ? Gzip.compress(body) : null;
+
+        final List<Map.Entry<String, String>> entryHeaders = new ArrayList<>(headers.size() + 2);
+        for (final Map.Entry<String, String> header : headers) {
+            final String name = header.getKey();
+            if ("ETag".equalsIgnoreCase(name) || "Last-Modified".equalsIgnoreCase(name) || "Pragma".equalsIgnoreCase(name) || "Expires".equalsIgnoreCase(name)
+                || "Content-Encoding".equalsIgnoreCase(name) || "Vary".equalsIgnoreCase(name)) {
+                continue;
+            }
+            if ("Cache-Control".equalsIgnoreCase(name) && header.getValue().contains("no-store")) {
+                entryHeaders.add(new AbstractMap.SimpleImmutableEntry<>(name, REVALIDATE));
+                continue;
+            }
+            entryHeaders.add(header);
+        }
+        if (compressedBody != null) {
+            entryHeaders.add(new AbstractMap.SimpleImmutableEntry<>("Vary", "Accept-Encoding"));
+        }
+        entryHeaders.add(new AbstractMap.SimpleImmutableEntry<>("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(now).atZone(ZoneOffset.UTC))));
+
+        final Entry entry = new Entry(Collections.unmodifiableList(entryHeaders), body, compressedBody, etag, now, generation);
+        if (body.length > this.maxEntryBytes) {
+            return entry;
+        }
+
+        synchronized (this) {
+            final Entry previous = this.entries.put(uri, entry);
+            if (previous != null) {
+                this.currentBytes -= previous.size();
+            }
+            this.currentBytes += entry.size();
+            // evict least recently used entries until the cache is back under budget
+            final Iterator<Entry> iterator = this.entries.values().iterator();
+            while (this.currentBytes > this.maxBytes && iterator.hasNext()) {
+                final Entry eldest = iterator.next();
+                iterator.remove();
+                this.currentBytes -= eldest.size();
+            }
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,370 @@
+package io.github.chrisruffalo.qgwt.runtime;
+
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.ext.web.RoutingContext;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Non-blocking alternative to {@link CodeServerProxy}. The request is handed to the code server
+ * through a pooled Vert.x client and the response is piped back as it arrives so no worker thread is
+ * held while waiting on the code server.
+ */
+public class ReactiveCodeServerProxy implements Handler<RoutingContext> {
+
+    private static final Logger LOGGER = Logger.getLogger(ReactiveCodeServerProxy.class);
+
+    private static final Set<String> HOP_BY_HOP_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    static {
+        HOP_BY_HOP_HEADERS.add("Connection");
+        HOP_BY_HOP_HEADERS.add("Keep-Alive");
+        HOP_BY_HOP_HEADERS.add("Transfer-Encoding");
+        HOP_BY_HOP_HEADERS.add("Content-Length");
+        HOP_BY_HOP_HEADERS.add("TE");
+        HOP_BY_HOP_HEADERS.add("Trailer");
+        HOP_BY_HOP_HEADERS.add("Upgrade");
+    }
+
+    private final String bindAddress;
+
+    private final int bindPort;
+
+    private final HttpClientOptions clientOptions;
+
+    private final long readTimeout;
+
+    private final PathPrefixMatcher prefixMatcher;
+
+    private final boolean serveFromDisk;
+
+    private final ProxyResponseCache responseCache;
+
+    private volatile HttpClient httpClient;
+
+    public ReactiveCodeServerProxy(final String bindAddress, final int bindPort, final String prefixes, final boolean serveFromDisk, final long cacheSize, final int maxConnections, final int connectTimeout, final long readTimeout, final int keepAlive) {
+        // if binding to all, connect to local host
+        this.bindAddress = "0.0.0.0".equals(bindAddress) ? "127.0.0.1" : bindAddress;
+        this.bindPort = bindPort;
+        this.readTimeout = readTimeout;
+        this.prefixMatcher = PathPrefixMatcher.parse(prefixes);
+        this.serveFromDisk = serveFromDisk;
+        this.responseCache = new ProxyResponseCache(cacheSize);
+        this.clientOptions = new HttpClientOptions()
+            .setMaxPoolSize(maxConnections)
+            .setKeepAlive(true)
+            .setKeepAliveTimeout(Math.max(1, keepAlive / 1000))
+            .setConnectTimeout(connectTimeout)
+            .setTcpNoDelay(true);
+    }
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        final HttpServerRequest request = routingContext.request();
+        if (HttpMethod.GET.equals(request.method()) && CodeServerOutputs.READINESS_PATH.equals(request.path())) {
+            sendReadiness(routingContext);
+            return;
+        }
+        if (!HttpMethod.GET.equals(request.method()) || !this.prefixMatcher.matches(request.path())) {
+            routingContext.next();
+            return;
+        }
+
+        // time spent on requests for code server paths, answered here or further down the chain
+        final long start = System.nanoTime();
+        routingContext.addEndHandler(ended -> CodeServerTimings.since(CodeServerTimings.Phase.PROXY, start));
+
+        // anything read from the code server since the last compile is answered from memory
+        final boolean cacheable = this.responseCache.isCacheable(request.path());
+        if (cacheable) {
+            final ProxyResponseCache.Entry cached = this.responseCache.get(request.uri());
+            if (cached != null) {
+                LOGGER.tracef("Serving %s from cache", request.uri());
+                send(cached, routingContext);
+                return;
+            }
+        }
+
+        // hold the request while the output directory or the code server is consulted so nothing is lost if the
+        // chain continues
+        request.pause();
+
+        // compiled output can be sent directly from the code server's output directory, finding it touches the disk
+        // so it is looked up off the event loop
+        if (this.serveFromDisk) {
+            final String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+            routingContext.vertx().<DiskFile>executeBlocking(
+                promise -> promise.complete(DiskFile.find(request.path(), acceptEncoding)),
+                false,
+                found -> {
+                    if (found.succeeded() && found.result() != null) {
+                        request.resume();
+                        sendFile(found.result(), routingContext);
+                    } else {
+                        proxy(routingContext, cacheable);
+                    }
+                });
+            return;
+        }
+        proxy(routingContext, cacheable);
+    }
+
+    /**
+     * Asks the code server for the request, which must be paused, and sends its answer or passes the request on
+     * down the chain if it has none.
+     */
+    private void proxy(final RoutingContext routingContext, final boolean cacheable) {
+        final HttpServerRequest request = routingContext.request();
+        final long generation = CodeServerOutputs.generation();
+
+        final RequestOptions options = new RequestOptions()
+            .setMethod(HttpMethod.GET)
+            .setHost(this.bindAddress)
+            .setPort(this.bindPort)
+            .setURI(request.uri())
+            .setTimeout(this.readTimeout);
+        LOGGER.tracef("Proxying GET request to http://%s:%d%s", this.bindAddress, this.bindPort, request.uri());
+
+        client(routingContext.vertx()).request(options)
+            .compose(HttpClientRequest::send)
+            .onComplete(result -> {
+                if (result.failed()) {
+                    LOGGER.tracef("Could not proxy %s to code server: %s", request.uri(), result.cause().getMessage());
+                    request.resume();
+                    routingContext.next();
+                    return;
+                }
+                final HttpClientResponse response = result.result();
+                // only return results for a successful response that has (or may have, when chunked) content
+                if (200 != response.statusCode() || "0".equals(response.getHeader(HttpHeaders.CONTENT_LENGTH))) {
+                    discard(response);
+                    request.resume();
+                    routingContext.next();
+                    return;
+                }
+                request.resume();
+                // a length that cannot be read is treated like one that was not given
+                final long length = parseLength(response.getHeader(HttpHeaders.CONTENT_LENGTH));
+                final String contentLength = length >= 0 ? String.valueOf(length) : null;
+                // keep the body if it is known to be small enough to be cached
+                if (cacheable && length >= 0 && length <= this.responseCache.getMaxEntryBytes()) {
+                    response.body().onComplete(body -> {
+                        if (body.failed()) {
+                            routingContext.fail(body.cause());
+                            return;
+                        }
+                        final List<Map.Entry<String, String>> headers = new ArrayList<>();
+                        for (final Map.Entry<String, String> header : response.headers()) {
+                            if (!HOP_BY_HOP_HEADERS.contains(header.getKey())) {
+                                headers.add(header);
+                            }
+                        }
+                        // compressing the entry is too slow for the event loop
+                        routingContext.vertx().<ProxyResponseCache.Entry>executeBlocking(
+                            promise -> promise.complete(this.responseCache.put(request.uri(), generation, headers, body.result().getBytes())),
+                            false,
+                            entry -> {
+                                if (entry.failed()) {
+                                    routingContext.fail(entry.cause());
+                                } else {
+                                    send(entry.result(), routingContext);
+                                }
+                            });
+                    });
+                    return;
+                }
+                final HttpServerResponse serverResponse = routingContext.response();
+                serverResponse.setStatusCode(response.statusCode());
+                copyHeaders(response.headers(), serverResponse.headers());
+                if (contentLength != null) {
+                    serverResponse.putHeader(HttpHeaders.CONTENT_LENGTH, contentLength);
+                } else {
+                    serverResponse.setChunked(true);
+                }
+                response.pipeTo(serverResponse);
+            });
+    }
+
+    /**
+     * Answers with the state of the code server so that tooling can wait for the background compile to finish.
+     */
+    private static void sendReadiness(final RoutingContext routingContext) {
+        final CodeServerOutputs.State state = CodeServerOutputs.state();
+        routingContext.response()
+            .setStatusCode(state == CodeServerOutputs.State.READY ? 200 : 503)
+            .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+            .putHeader(HttpHeaders.CACHE_CONTROL, "no-store")
+            .end(CodeServerOutputs.readinessJson(state));
+    }
+
+    /**
+     * Answers from a cached entry, with a 304 if the client already has it.
+     */
+    private static void send(final ProxyResponseCache.Entry entry, final RoutingContext routingContext) {
+        final HttpServerRequest request = routingContext.request();
+        final HttpServerResponse response = routingContext.response();
+        final boolean notModified = entry.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH), request.getHeader(HttpHeaders.IF_MODIFIED_SINCE));
+        final boolean compressed = entry.getCompressedBody() != null && Gzip.isAccepted(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        response.setStatusCode(notModified ? 304 : 200);
+        for (final Map.Entry<String, String> header : entry.getHeaders()) {
+            response.headers().add(header.getKey(), header.getValue());
+        }
+        response.putHeader(HttpHeaders.ETAG, compressed ? entry.getCompressedEtag() : entry.getEtag());
+        if (notModified) {
+            response.end();
+        } else if (compressed) {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            response.end(Buffer.buffer(entry.getCompressedBody()));
+        } else {
+            response.end(Buffer.buffer(entry.getBody()));
+        }
+    }
+
+    /**
+     * A file in the output of the last compile and the variant of it that is sent.
+     */
+    private static final class DiskFile {
+
+        private final Path source;
+
+        private final boolean compressed;
+
+        private final CodeServerOutputs.FileValidator validator;
+
+        private DiskFile(final Path source, final boolean compressed, final CodeServerOutputs.FileValidator validator) {
+            this.source = source;
+            this.compressed = compressed;
+            this.validator = validator;
+        }
+
+        /**
+         * Looks the file up on disk, this blocks.
+         *
+         * @return the file for the request path, or null if the last compile has none
+         */
+        private static DiskFile find(final String requestPath, final String acceptEncoding) {
+            final Path file = CodeServerOutputs.find(requestPath);
+            if (file == null) {
+                return null;
+            }
+            // send the variant compressed after the compile if the client takes it
+            final Path compressed = Gzip.isCompressible(requestPath) && Gzip.isAccepted(acceptEncoding) ? Gzip.findCompressed(file) : null;
+            final Path source = compressed != null ? compressed : file;
+            try {
+                return new DiskFile(source, compressed != null, CodeServerOutputs.validator(source));
+            } catch (IOException ex) {
+                // replaced or removed by a compile in the meantime, the code server has it
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Sends a file from the output of the last compile with sendFile, with the same headers the code server
+     * would have used, without going through the code server, or a 304 if the client already has it.
+     */
+    private static void sendFile(final DiskFile found, final RoutingContext routingContext) {
+        final HttpServerRequest request = routingContext.request();
+        final String requestPath = request.path();
+        LOGGER.tracef("Serving %s from %s", requestPath, found.source);
+        final HttpServerResponse response = routingContext.response();
+        response.putHeader("Access-Control-Allow-Origin", "*");
+        final String sourceMapUrl = CodeServerOutputs.sourceMapUrl(requestPath);
+        if (sourceMapUrl != null) {
+            response.putHeader("X-SourceMap", sourceMapUrl);
+            response.putHeader("SourceMap", sourceMapUrl);
+        }
+        if (!CodeServerOutputs.isImmutable(requestPath)) {
+            // kept by the browser but checked with the validators every time, like the cached responses
+            response.putHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+        response.putHeader(HttpHeaders.CONTENT_TYPE, CodeServerOutputs.mimeType(requestPath));
+        if (Gzip.isCompressible(requestPath)) {
+            response.putHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        response.putHeader(HttpHeaders.ETAG, found.validator.getEtag());
+        response.putHeader(HttpHeaders.LAST_MODIFIED, found.validator.getLastModified());
+        if (found.validator.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH), request.getHeader(HttpHeaders.IF_MODIFIED_SINCE))) {
+            response.setStatusCode(304).end();
+            return;
+        }
+        if (found.compressed) {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.sendFile(found.source.toString());
+    }
+
+    /**
+     * @return the content length, or -1 if there is none or it is not a number
+     */
+    private static long parseLength(final String contentLength) {
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            final long length = Long.parseLong(contentLength.trim());
+            return length >= 0 ? length : -1;
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads a response that is not used to the end so that its connection goes back to the pool, or resets the
+     * connection if that fails.
+     */
+    private static void discard(final HttpClientResponse response) {
+        response.handler(null);
+        response.end().onFailure(ex -> response.request().reset());
+        response.resume();
+    }
+
+    private static void copyHeaders(final MultiMap from, final MultiMap to) {
+        for (final String name : from.names()) {
+            if (!HOP_BY_HOP_HEADERS.contains(name)) {
+                to.set(name, from.getAll(name));
+            }
+        }
+    }
+
+    private HttpClient client(final Vertx vertx) {
+        HttpClient client = this.httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = this.httpClient;
+                if (client == null) {
+                    client = vertx.createHttpClient(this.clientOptions);
+                    this.httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    public void close() {
+        LOGGER.debugf("Code server proxy timings: %s", CodeServerTimings.summary(CodeServerTimings.Phase.PROXY));
+        final HttpClient client = this.httpClient;
+        if (client != null) {
+            client.close();
+            this.httpClient = null;
+        }
+    }
+}